@@ -0,0 +1,181 @@
+package com.example.exoplayer;
+
+import android.net.Uri;
+import android.os.SystemClock;
+import android.util.Log;
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.TransferListener;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Stall watchdog for media loads. When a load against the primary CDN misses one of its
+ * {@link RequestDeadlines} (connect, first byte, or no bytes for the first byte timeout in the
+ * middle of a response) the http client aborts it, and this data source re-issues the rest of the
+ * load to the same path on the alternate CDN.
+ *
+ * After a failover new loads go straight to the alternate CDN for a while before the primary is
+ * given another chance.
+ */
+public final class CdnFailoverDataSource implements DataSource {
+
+    /** Creates {@link CdnFailoverDataSource} instances sharing one failover state. */
+    public static final class Factory implements DataSource.Factory {
+
+        /** how long loads stay on the alternate CDN after the primary stalled */
+        public static final long DEFAULT_FAILOVER_HOLD_MS = 30_000;
+
+        private final DataSource.Factory upstreamFactory;
+        private final String primaryBaseUri;
+        private final String alternateBaseUri;
+        private final TimeoutMetrics timeoutMetrics;
+        private final long failoverHoldMs;
+        private volatile long failoverUntilMs;
+
+        /**
+         * @param upstreamFactory factory for the data sources doing the actual loading, their http
+         *     client is expected to enforce {@link RequestDeadlines#MEDIA}
+         * @param primaryBaseUri base uri of the primary CDN, only loads below it fail over
+         * @param alternateBaseUri base uri of the alternate CDN replacing the primary base
+         * @param timeoutMetrics where stalls and failovers are counted
+         */
+        public Factory(
+                DataSource.Factory upstreamFactory,
+                String primaryBaseUri,
+                String alternateBaseUri,
+                TimeoutMetrics timeoutMetrics) {
+            this.upstreamFactory = upstreamFactory;
+            this.primaryBaseUri = primaryBaseUri;
+            this.alternateBaseUri = alternateBaseUri;
+            this.timeoutMetrics = timeoutMetrics;
+            failoverHoldMs = DEFAULT_FAILOVER_HOLD_MS;
+        }
+
+        @Override
+        public CdnFailoverDataSource createDataSource() {
+            return new CdnFailoverDataSource(upstreamFactory.createDataSource(), /* factory= */ this);
+        }
+
+        private boolean isFailedOver() {
+            return SystemClock.elapsedRealtime() < failoverUntilMs;
+        }
+
+        private void onPrimaryStalled() {
+            failoverUntilMs = SystemClock.elapsedRealtime() + failoverHoldMs;
+        }
+    }
+
+    private static final String TAG = "CdnFailoverDataSource";
+
+    private final DataSource upstream;
+    private final Factory factory;
+
+    @Nullable private DataSpec dataSpec;
+    private long bytesRead;
+    private boolean usingAlternate;
+
+    private CdnFailoverDataSource(DataSource upstream, Factory factory) {
+        this.upstream = upstream;
+        this.factory = factory;
+    }
+
+    @Override
+    public void addTransferListener(TransferListener transferListener) {
+        upstream.addTransferListener(transferListener);
+    }
+
+    @Override
+    public long open(DataSpec dataSpec) throws IOException {
+        this.dataSpec = dataSpec;
+        bytesRead = 0;
+        usingAlternate = false;
+        if (factory.isFailedOver() && canFailover()) {
+            usingAlternate = true;
+            return upstream.open(toAlternate(dataSpec));
+        }
+        try {
+            return upstream.open(dataSpec);
+        } catch (IOException e) {
+            if (!onLoadError(e)) {
+                throw e;
+            }
+            return upstream.open(toAlternate(dataSpec));
+        }
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        int read;
+        try {
+            read = upstream.read(buffer, offset, length);
+        } catch (IOException e) {
+            if (!onLoadError(e)) {
+                throw e;
+            }
+            //pick up where the stalled response stopped
+            upstream.open(toAlternate(dataSpec.subrange(bytesRead)));
+            read = upstream.read(buffer, offset, length);
+        }
+        if (read != C.RESULT_END_OF_INPUT) {
+            bytesRead += read;
+        }
+        return read;
+    }
+
+    @Nullable
+    @Override
+    public Uri getUri() {
+        return upstream.getUri();
+    }
+
+    @Override
+    public Map<String, List<String>> getResponseHeaders() {
+        return upstream.getResponseHeaders();
+    }
+
+    @Override
+    public void close() throws IOException {
+        dataSpec = null;
+        upstream.close();
+    }
+
+    /**
+     * counts a missed deadline and gets the upstream ready to be reopened against the alternate
+     * CDN
+     * @param e error thrown by the upstream
+     * @return true if the load should be re-issued to the alternate CDN
+     */
+    private boolean onLoadError(IOException e) {
+        if (!RequestDeadlines.isTimeout(e)) {
+            return false;
+        }
+        factory.timeoutMetrics.onSegmentStall();
+        if (usingAlternate || !canFailover()) {
+            return false;
+        }
+        Log.w(TAG, "Load stalled on " + dataSpec.uri + ", switching to alternate CDN", e);
+        try {
+            upstream.close();
+        } catch (IOException closeException) {
+            //the connection is being thrown away anyway
+        }
+        factory.timeoutMetrics.onCdnFailover();
+        factory.onPrimaryStalled();
+        usingAlternate = true;
+        return true;
+    }
+
+    private boolean canFailover() {
+        return dataSpec != null && dataSpec.uri.toString().startsWith(factory.primaryBaseUri);
+    }
+
+    private DataSpec toAlternate(DataSpec dataSpec) {
+        String uri = dataSpec.uri.toString();
+        return dataSpec.withUri(
+                Uri.parse(factory.alternateBaseUri + uri.substring(factory.primaryBaseUri.length())));
+    }
+}
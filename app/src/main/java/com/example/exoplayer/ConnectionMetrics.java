@@ -0,0 +1,185 @@
+package com.example.exoplayer;
+
+import android.os.SystemClock;
+import androidx.annotation.Nullable;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import okhttp3.Call;
+import okhttp3.Connection;
+import okhttp3.EventListener;
+import okhttp3.Handshake;
+import okhttp3.Protocol;
+
+/**
+ * Collects connection statistics for every call made through the shared http client: how many
+ * calls reused a pooled connection and how long DNS, TCP and TLS setup took for the ones that
+ * didn't.
+ *
+ * Install it with {@link okhttp3.OkHttpClient.Builder#eventListenerFactory}, every call gets its
+ * own listener that reports into the shared counters. Calls tagged {@link WarmUp} open connections
+ * and are counted for the setup times, but they are not calls the reuse ratio is about.
+ */
+public final class ConnectionMetrics implements EventListener.Factory {
+
+    /** Request tag of calls made only to open a connection ahead of time. */
+    public static final class WarmUp {
+
+        public static final WarmUp INSTANCE = new WarmUp();
+
+        private WarmUp() {}
+    }
+
+    private final AtomicInteger callCount = new AtomicInteger();
+    private final AtomicInteger reusedCallCount = new AtomicInteger();
+    private final AtomicInteger newConnectionCount = new AtomicInteger();
+    private final AtomicInteger handshakeCount = new AtomicInteger();
+    private final AtomicInteger http2ConnectionCount = new AtomicInteger();
+    private final AtomicInteger http2CallCount = new AtomicInteger();
+    private final AtomicLong dnsTimeMs = new AtomicLong();
+    private final AtomicLong connectTimeMs = new AtomicLong();
+    private final AtomicLong handshakeTimeMs = new AtomicLong();
+
+    @Override
+    public EventListener create(Call call) {
+        return new CallListener(call.request().tag(WarmUp.class) != null);
+    }
+
+    /** number of calls that got a connection, new or pooled, warm up calls not included */
+    public int getCallCount() {
+        return callCount.get();
+    }
+
+    /** number of new connections, including the ones opened by warm up calls */
+    public int getNewConnectionCount() {
+        return newConnectionCount.get();
+    }
+
+    /**
+     * fraction of calls served by an already open connection, pooled or warmed up, 0 if nothing
+     * was requested yet
+     */
+    public float getConnectionReuseRatio() {
+        int calls = callCount.get();
+        return calls == 0 ? 0f : reusedCallCount.get() / (float) calls;
+    }
+
+    /** average TLS handshake time in ms, 0 if no handshake happened */
+    public long getAverageHandshakeTimeMs() {
+        int handshakes = handshakeCount.get();
+        return handshakes == 0 ? 0 : handshakeTimeMs.get() / handshakes;
+    }
+
+    /** average time to open a new connection including TLS in ms, 0 if none were opened */
+    public long getAverageConnectTimeMs() {
+        int connections = newConnectionCount.get();
+        return connections == 0 ? 0 : connectTimeMs.get() / connections;
+    }
+
+    /** number of new connections that negotiated HTTP/2 or started with it on cleartext */
+    public int getHttp2ConnectionCount() {
+        return http2ConnectionCount.get();
+    }
+
+    /**
+     * average number of calls carried by each HTTP/2 connection, anything above 1 means loads
+     * were multiplexed instead of opening connections of their own
+     */
+    public float getCallsPerHttp2Connection() {
+        int connections = http2ConnectionCount.get();
+        return connections == 0 ? 0f : http2CallCount.get() / (float) connections;
+    }
+
+    /** total time spent resolving hosts in ms */
+    public long getTotalDnsTimeMs() {
+        return dnsTimeMs.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                Locale.US,
+                "calls %d, new connections %d (h2 %d, %.1f calls each), reuse %.0f%%, avg connect %dms, avg tls handshake %dms, dns %dms",
+                getCallCount(),
+                getNewConnectionCount(),
+                getHttp2ConnectionCount(),
+                getCallsPerHttp2Connection(),
+                getConnectionReuseRatio() * 100,
+                getAverageConnectTimeMs(),
+                getAverageHandshakeTimeMs(),
+                getTotalDnsTimeMs());
+    }
+
+    /** cleartext h2 servers are talked to with prior knowledge, that is HTTP/2 as well */
+    private static boolean isHttp2(@Nullable Protocol protocol) {
+        return protocol == Protocol.HTTP_2 || protocol == Protocol.H2_PRIOR_KNOWLEDGE;
+    }
+
+    private final class CallListener extends EventListener {
+
+        private final boolean warmUp;
+        private boolean openedConnection;
+        private long dnsStartMs;
+        private long connectStartMs;
+        private long secureConnectStartMs;
+
+        CallListener(boolean warmUp) {
+            this.warmUp = warmUp;
+        }
+
+        @Override
+        public void dnsStart(Call call, String domainName) {
+            dnsStartMs = SystemClock.elapsedRealtime();
+        }
+
+        @Override
+        public void dnsEnd(Call call, String domainName, List<InetAddress> inetAddressList) {
+            dnsTimeMs.addAndGet(SystemClock.elapsedRealtime() - dnsStartMs);
+        }
+
+        @Override
+        public void connectStart(Call call, InetSocketAddress inetSocketAddress, Proxy proxy) {
+            connectStartMs = SystemClock.elapsedRealtime();
+        }
+
+        @Override
+        public void secureConnectStart(Call call) {
+            secureConnectStartMs = SystemClock.elapsedRealtime();
+        }
+
+        @Override
+        public void secureConnectEnd(Call call, @Nullable Handshake handshake) {
+            handshakeCount.incrementAndGet();
+            handshakeTimeMs.addAndGet(SystemClock.elapsedRealtime() - secureConnectStartMs);
+        }
+
+        @Override
+        public void connectEnd(
+                Call call, InetSocketAddress inetSocketAddress, Proxy proxy, @Nullable Protocol protocol) {
+            openedConnection = true;
+            newConnectionCount.incrementAndGet();
+            if (isHttp2(protocol)) {
+                http2ConnectionCount.incrementAndGet();
+            }
+            connectTimeMs.addAndGet(SystemClock.elapsedRealtime() - connectStartMs);
+        }
+
+        @Override
+        public void connectionAcquired(Call call, Connection connection) {
+            if (warmUp) {
+                return;
+            }
+            callCount.incrementAndGet();
+            if (!openedConnection) {
+                reusedCallCount.incrementAndGet();
+            }
+            if (isHttp2(connection.protocol())) {
+                http2CallCount.incrementAndGet();
+            }
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.exoplayer;
+
+import android.net.Uri;
+import android.os.SystemClock;
+import android.util.Log;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Opens connections to the license and CDN hosts before the player needs them, so the first
+ * license POST and first segment GET don't pay for DNS, TCP and TLS setup.
+ *
+ * Each host gets a HEAD request, all of them in parallel on the client's dispatcher so the license
+ * host isn't waiting behind the CDN. The connection it opens goes back into the pool of the shared
+ * {@link OkHttpClient} and is kept alive for the data sources to pick up. The requests are tagged
+ * as {@link ConnectionMetrics.WarmUp} so they don't count toward the connection reuse ratio.
+ */
+public final class ConnectionPrewarmer {
+
+    private static final String TAG = "ConnectionPrewarmer";
+
+    private final OkHttpClient httpClient;
+    private final ConnectionMetrics connectionMetrics;
+    private final List<Call> calls;
+
+    /**
+     * @param httpClient the client the data sources use, connections are pooled inside of it
+     * @param connectionMetrics metrics installed on the client
+     */
+    public ConnectionPrewarmer(OkHttpClient httpClient, ConnectionMetrics connectionMetrics) {
+        this.httpClient = httpClient;
+        this.connectionMetrics = connectionMetrics;
+        calls = new ArrayList<>();
+    }
+
+    /**
+     * resolves and connects to the hosts of the given urls, each host is only warmed once per
+     * call no matter how many urls point to it
+     * @param urls manifest, media or license urls
+     */
+    public void prewarm(String... urls) {
+        Set<String> origins = new LinkedHashSet<>();
+        for (String url : urls) {
+            Uri uri = Uri.parse(url);
+            if (uri.getScheme() != null && uri.getAuthority() != null) {
+                origins.add(uri.getScheme() + "://" + uri.getAuthority() + "/");
+            }
+        }
+        for (String origin : origins) {
+            warm(origin);
+        }
+    }
+
+    /** stops warming hosts that haven't been reached yet */
+    public synchronized void release() {
+        for (Call call : calls) {
+            call.cancel();
+        }
+        calls.clear();
+    }
+
+    private synchronized void warm(String origin) {
+        long startMs = SystemClock.elapsedRealtime();
+        Request request =
+                new Request.Builder()
+                        .url(origin)
+                        .head()
+                        .tag(ConnectionMetrics.WarmUp.class, ConnectionMetrics.WarmUp.INSTANCE)
+                        .build();
+        Call call = httpClient.newCall(request);
+        calls.add(call);
+        call.enqueue(new Callback() {
+            @Override
+            public void onResponse(Call call, Response response) {
+                //the response code doesn't matter, only that the connection ends up in the pool
+                response.close();
+                onWarmed(call);
+                Log.d(TAG, "Warmed " + origin + " (" + response.protocol() + ", " + response.code()
+                        + ") in " + (SystemClock.elapsedRealtime() - startMs) + "ms, " + connectionMetrics);
+            }
+
+            @Override
+            public void onFailure(Call call, IOException e) {
+                onWarmed(call);
+                if (!call.isCanceled()) {
+                    Log.w(TAG, "Failed to warm " + origin, e);
+                }
+            }
+        });
+    }
+
+    private synchronized void onWarmed(Call call) {
+        calls.remove(call);
+    }
+}
@@ -2,11 +2,14 @@ package com.example.exoplayer;
 
 import com.google.android.exoplayer2.C;
 import android.net.Uri;
+import android.os.SystemClock;
+import android.os.Trace;
 import android.text.TextUtils;
 import com.google.android.exoplayer2.drm.ExoMediaDrm.KeyRequest;
 import com.google.android.exoplayer2.drm.MediaDrmCallbackException;
 import com.google.android.exoplayer2.upstream.DataSpec;
 import com.google.common.collect.ImmutableMap;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.UUID;
@@ -21,10 +24,15 @@ import com.google.android.exoplayer2.util.Util;
 
 public final class CustomMediaDrmCallback implements com.google.android.exoplayer2.drm.MediaDrmCallback {
 
+    //a post that keeps failing with a bad response code is given up on instead of retried forever
+    private static final int MAX_POST_ATTEMPTS = 3;
+
     private final HttpDataSource.Factory dataSourceFactory;
     @Nullable private final String defaultLicenseUrl;
     private final boolean forceDefaultLicenseUrl;
     private final Map<String, String> keyRequestProperties;
+    @Nullable private TimeoutMetrics timeoutMetrics;
+    @Nullable private volatile PlayerEventPipeline eventPipeline;
 
     /**
      * Basic constructor used if you only have a key and a data source
@@ -47,11 +55,43 @@ public final class CustomMediaDrmCallback implements com.google.android.exoplaye
         this.keyRequestProperties = new HashMap<>();
     }
 
-    //unused for this project but would be used if a licence was not required. Included since you cannot
-    //instantiate an abstract class
+    /**
+     * sets where license and provisioning requests that miss their deadline are counted. The
+     * deadlines themselves are enforced by the data source factory, see {@link RequestDeadlines#DRM}
+     * @param timeoutMetrics metrics to count timeouts in, null to stop counting
+     */
+    public void setTimeoutMetrics(@Nullable TimeoutMetrics timeoutMetrics) {
+        this.timeoutMetrics = timeoutMetrics;
+    }
+
+    /**
+     * sets where finished license requests are reported, for the session trace
+     * @param eventPipeline pipeline to post {@link PlaybackEvent#TYPE_DRM_KEY_REQUEST} events to,
+     *     null to stop reporting
+     */
+    public void setEventPipeline(@Nullable PlayerEventPipeline eventPipeline) {
+        this.eventPipeline = eventPipeline;
+    }
+
+    /**
+     * execute a provisioning request for devices that don't have a certificate yet
+     * @param uuid a unique id (one from exoplayers android uuids)
+     * @param request contains the provisioning server url and the signed request
+     * @return the provisioning response
+     * @throws MediaDrmCallbackException if the request failed or missed its deadline
+     */
     @Override
     public byte[] executeProvisionRequest(UUID uuid, ProvisionRequest request) throws MediaDrmCallbackException {
-        return new byte[0];
+        String url =
+                request.getDefaultUrl() + "&signedRequest=" + Util.fromUtf8Bytes(request.getData());
+        try {
+            return executePost(dataSourceFactory, url, /* httpBody= */ null, Collections.emptyMap());
+        } catch (MediaDrmCallbackException e) {
+            if (timeoutMetrics != null && RequestDeadlines.isTimeout(e)) {
+                timeoutMetrics.onProvisionTimeout();
+            }
+            throw e;
+        }
     }
 
     /**
@@ -63,6 +103,17 @@ public final class CustomMediaDrmCallback implements com.google.android.exoplaye
      */
     @Override
     public byte[] executeKeyRequest(UUID uuid, KeyRequest request) throws MediaDrmCallbackException {
+        //shows the license round trip next to the loads it holds up in systrace
+        Trace.beginSection("executeKeyRequest");
+        try {
+            return executeKeyRequestInternal(uuid, request);
+        } finally {
+            Trace.endSection();
+        }
+    }
+
+    private byte[] executeKeyRequestInternal(UUID uuid, KeyRequest request)
+            throws MediaDrmCallbackException {
         String url = request.getLicenseServerUrl(); // only used if passed a keyrequest
         if (forceDefaultLicenseUrl || TextUtils.isEmpty(url)) { //otherwise default license is forced when creating a drmcallback object
             url = defaultLicenseUrl;
@@ -93,7 +144,33 @@ public final class CustomMediaDrmCallback implements com.google.android.exoplaye
             requestProperties.putAll(keyRequestProperties);
         }
         //returns the helper function that basically just creates an inputStream with the data
-        return executePost(dataSourceFactory, url, request.getData(), requestProperties);
+        long startMs = SystemClock.elapsedRealtime();
+        try {
+            byte[] response = executePost(dataSourceFactory, url, request.getData(), requestProperties);
+            postKeyRequestEvent(url, response.length, startMs);
+            return response;
+        } catch (MediaDrmCallbackException e) {
+            if (timeoutMetrics != null && RequestDeadlines.isTimeout(e)) {
+                timeoutMetrics.onLicenseTimeout();
+            }
+            postKeyRequestEvent(url, /* responseBytes= */ -1, startMs);
+            throw e;
+        }
+    }
+
+    private void postKeyRequestEvent(String url, long responseBytes, long startMs) {
+        PlayerEventPipeline pipeline = eventPipeline;
+        if (pipeline == null) {
+            return;
+        }
+        long nowMs = SystemClock.elapsedRealtime();
+        pipeline.post(new PlaybackEvent(
+                PlaybackEvent.TYPE_DRM_KEY_REQUEST,
+                nowMs,
+                /* positionMs= */ C.TIME_UNSET,
+                responseBytes,
+                nowMs - startMs,
+                url));
     }
 
     /**
@@ -125,12 +202,16 @@ public final class CustomMediaDrmCallback implements com.google.android.exoplaye
         DataSpec originalDataSpec = dataSpec;
 
         try {
+            int attempt = 0;
             while (true) {
                 DataSourceInputStream inputStream = new DataSourceInputStream(dataSource, dataSpec);
                 try {
                     return Util.toByteArray(inputStream);
                 } catch (InvalidResponseCodeException e) {
 //               util.toByteArray() requires these exceptions be checked but are not required for the project
+                    if (++attempt >= MAX_POST_ATTEMPTS) {
+                        throw e;
+                    }
                 } finally {
                     Util.closeQuietly(inputStream);
                 }
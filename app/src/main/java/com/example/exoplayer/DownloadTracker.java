@@ -0,0 +1,414 @@
+package com.example.exoplayer;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.widget.Toast;
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.DefaultRenderersFactory;
+import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.MediaItem;
+import com.google.android.exoplayer2.drm.DefaultDrmSessionManager;
+import com.google.android.exoplayer2.drm.DrmSession;
+import com.google.android.exoplayer2.drm.FrameworkMediaDrm;
+import com.google.android.exoplayer2.offline.Download;
+import com.google.android.exoplayer2.offline.DownloadCursor;
+import com.google.android.exoplayer2.offline.DownloadHelper;
+import com.google.android.exoplayer2.offline.DownloadIndex;
+import com.google.android.exoplayer2.offline.DownloadManager;
+import com.google.android.exoplayer2.offline.DownloadRequest;
+import com.google.android.exoplayer2.offline.DownloadService;
+import com.google.android.exoplayer2.source.MediaSource;
+import com.google.android.exoplayer2.source.TrackGroup;
+import com.google.android.exoplayer2.source.TrackGroupArray;
+import com.google.android.exoplayer2.trackselection.DefaultTrackSelector;
+import com.google.android.exoplayer2.trackselection.MappingTrackSelector.MappedTrackInfo;
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.HttpDataSource;
+import com.google.android.exoplayer2.util.Assertions;
+import com.google.android.exoplayer2.util.Util;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Keeps track of the downloaded media and starts new downloads together with their persistent
+ * license.
+ *
+ * The license server url is stored as the data of each {@link DownloadRequest} so the license can
+ * be renewed later without knowing where the download came from.
+ */
+public final class DownloadTracker {
+
+    /** Listens for changes in the tracked downloads. */
+    public interface Listener {
+
+        /** called on the main thread when a download is added, removed or changes state */
+        void onDownloadsChanged();
+    }
+
+    private static final String TAG = "DownloadTracker";
+
+    private final Context context;
+    private final HttpDataSource.Factory httpDataSourceFactory;
+    private final HttpDataSource.Factory licenseDataSourceFactory;
+    private final CopyOnWriteArraySet<Listener> listeners;
+    private final HashMap<Uri, Download> downloads;
+    private final DownloadIndex downloadIndex;
+    private final ExecutorService licenseExecutor;
+    private final Handler mainHandler;
+    private final KeySetIdStore keySetIdStore;
+
+    @Nullable private DownloadHelper pendingDownloadHelper;
+    @Nullable private volatile PlayerEventPipeline eventPipeline;
+
+    /**
+     * @param context any context
+     * @param httpDataSourceFactory factory for manifest loads
+     * @param licenseDataSourceFactory factory for license requests
+     * @param downloadManager the app's download manager
+     */
+    public DownloadTracker(
+            Context context,
+            HttpDataSource.Factory httpDataSourceFactory,
+            HttpDataSource.Factory licenseDataSourceFactory,
+            DownloadManager downloadManager) {
+        this.context = context.getApplicationContext();
+        this.httpDataSourceFactory = httpDataSourceFactory;
+        this.licenseDataSourceFactory = licenseDataSourceFactory;
+        listeners = new CopyOnWriteArraySet<>();
+        downloads = new HashMap<>();
+        downloadIndex = downloadManager.getDownloadIndex();
+        licenseExecutor = Executors.newSingleThreadExecutor();
+        mainHandler = new Handler(Looper.getMainLooper());
+        keySetIdStore = new KeySetIdStore(this.context);
+        downloadManager.addListener(new DownloadManagerListener());
+        loadDownloads();
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(Assertions.checkNotNull(listener));
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * sets where the license requests of downloads, renewals and releases are reported, so they
+     * show up in the trace of the session playing while they run
+     * @param eventPipeline pipeline of the playing session, null when there is none
+     */
+    public void setEventPipeline(@Nullable PlayerEventPipeline eventPipeline) {
+        this.eventPipeline = eventPipeline;
+    }
+
+    /**
+     * checks if the media at the uri has been fully downloaded
+     * @param uri uri of the media
+     * @return true if every segment is in the download cache
+     */
+    public boolean isDownloaded(Uri uri) {
+        @Nullable Download download = downloads.get(uri);
+        return download != null && download.state == Download.STATE_COMPLETED;
+    }
+
+    /**
+     * checks if the media at the uri is downloaded or on its way, queued, downloading or stopped
+     * @param uri uri of the media
+     * @return true if there is a download that hasn't failed
+     */
+    public boolean hasDownload(Uri uri) {
+        @Nullable Download download = downloads.get(uri);
+        return download != null
+                && download.state != Download.STATE_FAILED
+                && download.state != Download.STATE_REMOVING;
+    }
+
+    /**
+     * returns the download request for the media at the uri if it has been fully downloaded,
+     * media that is still downloading is streamed instead
+     * @param uri uri of the media
+     * @return the download request, null if there is no completed download
+     */
+    @Nullable
+    public DownloadRequest getDownloadRequest(Uri uri) {
+        return isDownloaded(uri) ? downloads.get(uri).request : null;
+    }
+
+    /**
+     * creates a media source that plays a download without touching the network for the license,
+     * segments that are not downloaded yet are streamed through the download cache
+     * @param request download request of the media
+     * @return media source for the download
+     */
+    public MediaSource createMediaSource(DownloadRequest request) {
+        DefaultDrmSessionManager drmSessionManager = null;
+        @Nullable String licenseUri = getLicenseUri(request);
+        @Nullable byte[] keySetId = getKeySetId(request);
+        if (keySetId != null && licenseUri != null) {
+            CustomMediaDrmCallback drmCallback =
+                    new CustomMediaDrmCallback(licenseUri, licenseDataSourceFactory);
+            drmSessionManager =
+                    new DefaultDrmSessionManager.Builder()
+                            .setUuidAndExoMediaDrmProvider(C.WIDEVINE_UUID, FrameworkMediaDrm.DEFAULT_PROVIDER)
+                            .build(drmCallback);
+            drmSessionManager.setMode(DefaultDrmSessionManager.MODE_PLAYBACK, keySetId);
+        }
+        DataSource.Factory dataSourceFactory = DownloadUtil.getDataSourceFactory(context);
+        return DownloadHelper.createMediaSource(request, dataSourceFactory, drmSessionManager);
+    }
+
+    /**
+     * starts downloading the media item, the tracks picked are the ones the given parameters
+     * select with the highest supported bitrate, so the download matches what was chosen in the
+     * track selection dialog
+     * @param mediaItem media item with a drm configuration for protected content
+     * @param parameters track selection parameters to pick the rendition set with
+     */
+    public void startDownload(MediaItem mediaItem, DefaultTrackSelector.Parameters parameters) {
+        if (pendingDownloadHelper != null) {
+            return;
+        }
+        DefaultTrackSelector.Parameters downloadParameters =
+                parameters.buildUpon().setForceHighestSupportedBitrate(true).build();
+        DownloadHelper downloadHelper =
+                DownloadHelper.forMediaItem(
+                        context, mediaItem, new DefaultRenderersFactory(context), httpDataSourceFactory);
+        pendingDownloadHelper = downloadHelper;
+        downloadHelper.prepare(new DownloadHelper.Callback() {
+            @Override
+            public void onPrepared(DownloadHelper helper) {
+                for (int periodIndex = 0; periodIndex < helper.getPeriodCount(); periodIndex++) {
+                    helper.clearTrackSelections(periodIndex);
+                    helper.addTrackSelection(periodIndex, downloadParameters);
+                }
+                @Nullable Format format = getFirstFormatWithDrmInitData(helper);
+                @Nullable MediaItem.DrmConfiguration drmConfiguration =
+                        Assertions.checkNotNull(mediaItem.localConfiguration).drmConfiguration;
+                if (format == null || drmConfiguration == null || drmConfiguration.licenseUri == null) {
+                    addDownload(helper, mediaItem, /* licenseUri= */ null, /* keySetId= */ null);
+                    return;
+                }
+                String licenseUri = drmConfiguration.licenseUri.toString();
+                licenseExecutor.execute(() -> {
+                    OfflineLicenseManager licenseManager = createLicenseManager(licenseUri);
+                    try {
+                        byte[] keySetId = licenseManager.downloadLicense(format);
+                        mainHandler.post(() -> addDownload(helper, mediaItem, licenseUri, keySetId));
+                    } catch (DrmSession.DrmSessionException e) {
+                        mainHandler.post(() -> onDownloadError(helper, e));
+                    } finally {
+                        licenseManager.release();
+                    }
+                });
+            }
+
+            @Override
+            public void onPrepareError(DownloadHelper helper, IOException e) {
+                onDownloadError(helper, e);
+            }
+        });
+    }
+
+    /**
+     * removes a download and its segments, the persistent license is released once the download
+     * manager has removed it
+     * @param uri uri of the media
+     */
+    public void removeDownload(Uri uri) {
+        //gone from the tracker right away so nothing starts playing it while it is being removed
+        @Nullable Download download = downloads.remove(uri);
+        if (download == null) {
+            return;
+        }
+        notifyDownloadsChanged();
+        DownloadService.sendRemoveDownload(
+                context, OfflineDownloadService.class, download.request.id, /* foreground= */ false);
+    }
+
+    /**
+     * renews the persistent licenses of all downloads that are about to expire, so they keep
+     * playing while offline. Needs network, so call it whenever the app is started online.
+     */
+    public void renewExpiringLicenses() {
+        List<DownloadRequest> requests = new ArrayList<>();
+        for (Download download : downloads.values()) {
+            if (download.state == Download.STATE_COMPLETED
+                    && getKeySetId(download.request) != null
+                    && getLicenseUri(download.request) != null) {
+                requests.add(download.request);
+            }
+        }
+        if (requests.isEmpty()) {
+            return;
+        }
+        licenseExecutor.execute(() -> {
+            for (DownloadRequest request : requests) {
+                OfflineLicenseManager licenseManager =
+                        createLicenseManager(Assertions.checkNotNull(getLicenseUri(request)));
+                try {
+                    byte[] keySetId = Assertions.checkNotNull(getKeySetId(request));
+                    byte[] renewedKeySetId = licenseManager.renewIfExpiring(keySetId);
+                    if (!Arrays.equals(renewedKeySetId, keySetId)) {
+                        //kept next to the request, re-adding the request would queue the download again
+                        keySetIdStore.put(request.id, renewedKeySetId);
+                    }
+                } catch (DrmSession.DrmSessionException e) {
+                    Log.w(TAG, "Failed to renew offline license for " + request.uri, e);
+                } finally {
+                    licenseManager.release();
+                }
+            }
+        });
+    }
+
+    private void addDownload(
+            DownloadHelper helper,
+            MediaItem mediaItem,
+            @Nullable String licenseUri,
+            @Nullable byte[] keySetId) {
+        DownloadRequest request =
+                helper.getDownloadRequest(
+                        Assertions.checkNotNull(mediaItem.localConfiguration).uri.toString(),
+                        licenseUri == null ? null : Util.getUtf8Bytes(licenseUri));
+        if (keySetId != null) {
+            request = request.copyWithKeySetId(keySetId);
+        }
+        DownloadService.sendAddDownload(
+                context, OfflineDownloadService.class, request, /* foreground= */ false);
+        releaseHelper(helper);
+    }
+
+    /** runs on the license executor */
+    private OfflineLicenseManager createLicenseManager(String licenseUri) {
+        OfflineLicenseManager licenseManager =
+                new OfflineLicenseManager(licenseUri, licenseDataSourceFactory);
+        licenseManager.setEventPipeline(eventPipeline);
+        return licenseManager;
+    }
+
+    /**
+     * releases the persistent license of a download the download manager has removed
+     * @param request request of the removed download
+     */
+    private void releaseLicense(DownloadRequest request) {
+        @Nullable String licenseUri = getLicenseUri(request);
+        @Nullable byte[] keySetId = getKeySetId(request);
+        keySetIdStore.remove(request.id);
+        if (keySetId == null || licenseUri == null) {
+            return;
+        }
+        licenseExecutor.execute(() -> {
+            OfflineLicenseManager licenseManager = createLicenseManager(licenseUri);
+            try {
+                licenseManager.releaseLicense(keySetId);
+            } catch (DrmSession.DrmSessionException e) {
+                Log.w(TAG, "Failed to release offline license", e);
+            } finally {
+                licenseManager.release();
+            }
+        });
+    }
+
+    private void onDownloadError(DownloadHelper helper, Exception e) {
+        Log.e(TAG, "Failed to start download", e);
+        Toast.makeText(context, "Failed to start download", Toast.LENGTH_LONG).show();
+        releaseHelper(helper);
+    }
+
+    private void releaseHelper(DownloadHelper helper) {
+        helper.release();
+        if (pendingDownloadHelper == helper) {
+            pendingDownloadHelper = null;
+        }
+    }
+
+    /**
+     * returns the key set id of the download's license, the renewed one if it was renewed
+     * @param request download request
+     * @return key set id or null if the download has no persistent license
+     */
+    @Nullable
+    private byte[] getKeySetId(DownloadRequest request) {
+        return keySetIdStore.get(request.id, request.keySetId);
+    }
+
+    /**
+     * returns the license server url stored with the download request
+     * @param request download request
+     * @return license url or null if the download is not protected
+     */
+    @Nullable
+    private static String getLicenseUri(DownloadRequest request) {
+        return request.data.length == 0 ? null : Util.fromUtf8Bytes(request.data);
+    }
+
+    /**
+     * finds the first format that has drm init data, the offline license is requested for it
+     * @param helper prepared download helper
+     * @return format with drm init data or null if the content is not protected
+     */
+    @Nullable
+    private static Format getFirstFormatWithDrmInitData(DownloadHelper helper) {
+        for (int periodIndex = 0; periodIndex < helper.getPeriodCount(); periodIndex++) {
+            MappedTrackInfo mappedTrackInfo = helper.getMappedTrackInfo(periodIndex);
+            for (int rendererIndex = 0; rendererIndex < mappedTrackInfo.getRendererCount(); rendererIndex++) {
+                TrackGroupArray trackGroups = mappedTrackInfo.getTrackGroups(rendererIndex);
+                for (int trackGroupIndex = 0; trackGroupIndex < trackGroups.length; trackGroupIndex++) {
+                    TrackGroup trackGroup = trackGroups.get(trackGroupIndex);
+                    for (int formatIndex = 0; formatIndex < trackGroup.length; formatIndex++) {
+                        Format format = trackGroup.getFormat(formatIndex);
+                        if (format.drmInitData != null) {
+                            return format;
+                        }
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    private void loadDownloads() {
+        try (DownloadCursor loadedDownloads = downloadIndex.getDownloads()) {
+            while (loadedDownloads.moveToNext()) {
+                Download download = loadedDownloads.getDownload();
+                downloads.put(download.request.uri, download);
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to query downloads", e);
+        }
+    }
+
+    private void notifyDownloadsChanged() {
+        for (Listener listener : listeners) {
+            listener.onDownloadsChanged();
+        }
+    }
+
+    private class DownloadManagerListener implements DownloadManager.Listener {
+
+        @Override
+        public void onDownloadChanged(
+                DownloadManager downloadManager, Download download, @Nullable Exception finalException) {
+            downloads.put(download.request.uri, download);
+            notifyDownloadsChanged();
+        }
+
+        @Override
+        public void onDownloadRemoved(DownloadManager downloadManager, Download download) {
+            downloads.remove(download.request.uri);
+            //the segments are gone, only now nothing can open a session with the license
+            releaseLicense(download.request);
+            notifyDownloadsChanged();
+        }
+    }
+}
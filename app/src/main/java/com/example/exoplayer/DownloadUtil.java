@@ -0,0 +1,311 @@
+package com.example.exoplayer;
+
+import android.content.Context;
+import android.util.Log;
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.database.DatabaseProvider;
+import com.google.android.exoplayer2.database.StandaloneDatabaseProvider;
+import com.google.android.exoplayer2.ext.okhttp.OkHttpDataSource;
+import com.google.android.exoplayer2.offline.DownloadManager;
+import com.google.android.exoplayer2.ui.DownloadNotificationHelper;
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.DefaultDataSource;
+import com.google.android.exoplayer2.upstream.HttpDataSource;
+import com.google.android.exoplayer2.upstream.cache.Cache;
+import com.google.android.exoplayer2.upstream.cache.CacheDataSource;
+import com.google.android.exoplayer2.upstream.cache.LeastRecentlyUsedCacheEvictor;
+import com.google.android.exoplayer2.upstream.cache.NoOpCacheEvictor;
+import com.google.android.exoplayer2.upstream.cache.SimpleCache;
+import java.io.File;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import okhttp3.ConnectionPool;
+import okhttp3.OkHttpClient;
+
+/**
+ * Holds the app wide objects needed for streaming and offline playback, the shared http client,
+ * the download and preload caches, the download manager and the data source factories that read
+ * through the caches.
+ *
+ * Everything is created lazily and shared between the activity and {@link OfflineDownloadService}.
+ */
+public final class DownloadUtil {
+
+    private static final String TAG = "DownloadUtil";
+
+    public static final String DOWNLOAD_NOTIFICATION_CHANNEL_ID = "download_channel";
+
+    /** number of segments of one asset fetched at the same time */
+    public static final int PARALLEL_SEGMENT_DOWNLOADS = 4;
+
+    /** number of assets downloaded at the same time */
+    public static final int MAX_PARALLEL_DOWNLOADS = 2;
+
+    private static final String DOWNLOAD_CONTENT_DIRECTORY = "downloads";
+    private static final String PRELOAD_CONTENT_DIRECTORY = "preload";
+
+    /** disk space for preloaded manifests and first segments, least recently used is evicted */
+    public static final long PRELOAD_CACHE_BYTES = 32 * 1024 * 1024;
+
+    /** idle connections kept open for the license and CDN hosts */
+    private static final int MAX_IDLE_CONNECTIONS = 8;
+    private static final long CONNECTION_KEEP_ALIVE_MINUTES = 5;
+
+    private static DatabaseProvider databaseProvider;
+    private static File downloadDirectory;
+    private static Cache downloadCache;
+    private static Cache preloadCache;
+    private static DownloadManager downloadManager;
+    private static DownloadTracker downloadTracker;
+    private static DownloadNotificationHelper downloadNotificationHelper;
+    private static HttpDataSource.Factory httpDataSourceFactory;
+    private static HttpDataSource.Factory licenseDataSourceFactory;
+    private static TimeoutMetrics timeoutMetrics;
+    @Nullable private static String primaryCdnBaseUri;
+    @Nullable private static String alternateCdnBaseUri;
+    private static OkHttpClient httpClient;
+    private static ConnectionMetrics connectionMetrics;
+    private static HttpTransport httpTransport = HttpTransport.HTTP_2;
+
+    private DownloadUtil() {}
+
+    /**
+     * the http data source factory shared by media and download requests, it reuses the kept alive
+     * connections of {@link #getHttpClient()} and enforces {@link RequestDeadlines#MEDIA}
+     * @return shared http data source factory
+     */
+    public static synchronized HttpDataSource.Factory getHttpDataSourceFactory() {
+        if (httpDataSourceFactory == null) {
+            httpDataSourceFactory =
+                    new OkHttpDataSource.Factory(RequestDeadlines.MEDIA.apply(getHttpClient()));
+        }
+        return httpDataSourceFactory;
+    }
+
+    /**
+     * the http data source factory for license and provisioning requests, same connections as
+     * the media requests but with the tighter {@link RequestDeadlines#DRM}
+     * @return shared license data source factory
+     */
+    public static synchronized HttpDataSource.Factory getLicenseDataSourceFactory() {
+        if (licenseDataSourceFactory == null) {
+            licenseDataSourceFactory =
+                    new OkHttpDataSource.Factory(RequestDeadlines.DRM.apply(getHttpClient()));
+        }
+        return licenseDataSourceFactory;
+    }
+
+    /**
+     * counts of requests that missed their deadline
+     * @return shared timeout metrics
+     */
+    public static synchronized TimeoutMetrics getTimeoutMetrics() {
+        if (timeoutMetrics == null) {
+            timeoutMetrics = new TimeoutMetrics();
+        }
+        return timeoutMetrics;
+    }
+
+    /**
+     * sets the CDN that stalled media loads are re-issued to
+     * @param primaryBaseUri base uri of the CDN in the manifest
+     * @param alternateBaseUri base uri serving the same paths, null to disable failover
+     */
+    public static synchronized void setAlternateCdn(
+            String primaryBaseUri, @Nullable String alternateBaseUri) {
+        primaryCdnBaseUri = primaryBaseUri;
+        alternateCdnBaseUri = alternateBaseUri;
+    }
+
+    /**
+     * picks the protocols of the shared http client. Set it before anything else here is used, if
+     * the client was already built with another transport it is rebuilt for the data sources
+     * created from now on, but a download manager that already exists keeps the old one
+     * @param transport transport to use
+     */
+    public static synchronized void setHttpTransport(HttpTransport transport) {
+        if (transport == httpTransport) {
+            return;
+        }
+        httpTransport = transport;
+        if (httpClient != null) {
+            Log.w(TAG, "Rebuilding http client for " + transport);
+            httpClient = null;
+            httpDataSourceFactory = null;
+            licenseDataSourceFactory = null;
+        }
+    }
+
+    public static synchronized HttpTransport getHttpTransport() {
+        return httpTransport;
+    }
+
+    /**
+     * the http client behind every data source, its connection pool is what
+     * {@link ConnectionPrewarmer} fills before playback starts. With {@link HttpTransport#HTTP_2}
+     * the segment loads of all renditions and the license requests to a host share a single
+     * multiplexed connection from the pool.
+     * @return shared http client
+     */
+    public static synchronized OkHttpClient getHttpClient() {
+        if (httpClient == null) {
+            httpClient =
+                    httpTransport.apply(new OkHttpClient.Builder())
+                            .connectionPool(
+                                    new ConnectionPool(
+                                            MAX_IDLE_CONNECTIONS, CONNECTION_KEEP_ALIVE_MINUTES, TimeUnit.MINUTES))
+                            .eventListenerFactory(getConnectionMetrics())
+                            .build();
+        }
+        return httpClient;
+    }
+
+    /**
+     * connection reuse and handshake timings of the shared http client
+     * @return shared connection metrics
+     */
+    public static synchronized ConnectionMetrics getConnectionMetrics() {
+        if (connectionMetrics == null) {
+            connectionMetrics = new ConnectionMetrics();
+        }
+        return connectionMetrics;
+    }
+
+    /**
+     * data source factory for playback, reads whatever has been downloaded or preloaded from the
+     * caches and falls back to the network for everything else
+     * @param context any context
+     * @return data source factory backed by the download and preload caches
+     */
+    public static synchronized DataSource.Factory getDataSourceFactory(Context context) {
+        DataSource.Factory upstreamFactory =
+                new DefaultDataSource.Factory(context.getApplicationContext(), getHttpDataSourceFactory());
+        if (primaryCdnBaseUri != null && alternateCdnBaseUri != null) {
+            upstreamFactory =
+                    new CdnFailoverDataSource.Factory(
+                            upstreamFactory, primaryCdnBaseUri, alternateCdnBaseUri, getTimeoutMetrics());
+        }
+        DataSource.Factory preloadFactory =
+                new CacheDataSource.Factory()
+                        .setCache(getPreloadCache(context))
+                        .setUpstreamDataSourceFactory(upstreamFactory)
+                        // only the preloader writes here, streamed media would push out what it preloaded
+                        .setCacheWriteDataSinkFactory(null)
+                        .setFlags(CacheDataSource.FLAG_IGNORE_CACHE_ON_ERROR);
+        DataSource.Factory downloadFactory =
+                new CacheDataSource.Factory()
+                        .setCache(getDownloadCache(context))
+                        .setUpstreamDataSourceFactory(preloadFactory)
+                        // playback never writes to the download cache, only the downloader does
+                        .setCacheWriteDataSinkFactory(null)
+                        .setFlags(CacheDataSource.FLAG_IGNORE_CACHE_ON_ERROR);
+        //outermost so cache hits show up in systrace as well as network loads
+        return new TracingDataSource.Factory(downloadFactory);
+    }
+
+    /**
+     * data source factory that writes what it reads to the preload cache, used by
+     * {@link NextItemPreloader}
+     * @param context any context
+     * @return data source factory writing to the preload cache
+     */
+    public static synchronized CacheDataSource.Factory getPreloadDataSourceFactory(Context context) {
+        return new CacheDataSource.Factory()
+                .setCache(getPreloadCache(context))
+                .setUpstreamDataSourceFactory(
+                        new DefaultDataSource.Factory(
+                                context.getApplicationContext(), getHttpDataSourceFactory()));
+    }
+
+    /**
+     * the bounded cache holding the start of the next playlist item, kept apart from the download
+     * cache so its evictions never touch downloads
+     * @param context any context
+     * @return shared preload cache
+     */
+    public static synchronized Cache getPreloadCache(Context context) {
+        if (preloadCache == null) {
+            File preloadContentDirectory =
+                    new File(context.getCacheDir(), PRELOAD_CONTENT_DIRECTORY);
+            preloadCache =
+                    new SimpleCache(
+                            preloadContentDirectory,
+                            new LeastRecentlyUsedCacheEvictor(PRELOAD_CACHE_BYTES),
+                            getDatabaseProvider(context));
+        }
+        return preloadCache;
+    }
+
+    public static synchronized DownloadNotificationHelper getDownloadNotificationHelper(
+            Context context) {
+        if (downloadNotificationHelper == null) {
+            downloadNotificationHelper =
+                    new DownloadNotificationHelper(context, DOWNLOAD_NOTIFICATION_CHANNEL_ID);
+        }
+        return downloadNotificationHelper;
+    }
+
+    public static synchronized DownloadManager getDownloadManager(Context context) {
+        ensureDownloadManagerInitialized(context);
+        return downloadManager;
+    }
+
+    public static synchronized DownloadTracker getDownloadTracker(Context context) {
+        ensureDownloadManagerInitialized(context);
+        return downloadTracker;
+    }
+
+    /**
+     * creates the download manager, downloads left unfinished by a previous run are restored from
+     * the download index and carry on from the segments already in the cache
+     * @param context any context
+     */
+    private static synchronized void ensureDownloadManagerInitialized(Context context) {
+        if (downloadManager == null) {
+            Context applicationContext = context.getApplicationContext();
+            //the executor decides how many segments of one download are fetched in parallel
+            downloadManager =
+                    new DownloadManager(
+                            applicationContext,
+                            getDatabaseProvider(applicationContext),
+                            getDownloadCache(applicationContext),
+                            getHttpDataSourceFactory(),
+                            Executors.newFixedThreadPool(PARALLEL_SEGMENT_DOWNLOADS));
+            downloadManager.setMaxParallelDownloads(MAX_PARALLEL_DOWNLOADS);
+            downloadTracker =
+                    new DownloadTracker(
+                            applicationContext,
+                            getHttpDataSourceFactory(),
+                            getLicenseDataSourceFactory(),
+                            downloadManager);
+        }
+    }
+
+    private static synchronized Cache getDownloadCache(Context context) {
+        if (downloadCache == null) {
+            File downloadContentDirectory =
+                    new File(getDownloadDirectory(context), DOWNLOAD_CONTENT_DIRECTORY);
+            downloadCache =
+                    new SimpleCache(
+                            downloadContentDirectory, new NoOpCacheEvictor(), getDatabaseProvider(context));
+        }
+        return downloadCache;
+    }
+
+    private static synchronized DatabaseProvider getDatabaseProvider(Context context) {
+        if (databaseProvider == null) {
+            databaseProvider = new StandaloneDatabaseProvider(context.getApplicationContext());
+        }
+        return databaseProvider;
+    }
+
+    private static synchronized File getDownloadDirectory(Context context) {
+        if (downloadDirectory == null) {
+            downloadDirectory = context.getExternalFilesDir(/* type= */ null);
+            if (downloadDirectory == null) {
+                downloadDirectory = context.getFilesDir();
+            }
+        }
+        return downloadDirectory;
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.exoplayer;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded lock-free queue for many producers and a single consumer.
+ *
+ * Producers claim a slot with a compare and set on the tail and publish into it, they never
+ * block or take a lock, so it is safe to offer from the playback and main threads. When the
+ * buffer is full the element is dropped and counted instead of waiting for the consumer.
+ *
+ * @param <T> type of the elements
+ */
+public final class EventRingBuffer<T> {
+
+    private final AtomicReferenceArray<T> slots;
+    private final int mask;
+    //next sequence a producer claims
+    private final AtomicLong tail;
+    //next sequence the consumer reads, only written by the consumer
+    private final AtomicLong head;
+    private final AtomicLong droppedCount;
+
+    /**
+     * @param capacity number of elements the buffer holds, rounded up to a power of two
+     */
+    public EventRingBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        slots = new AtomicReferenceArray<>(size);
+        mask = size - 1;
+        tail = new AtomicLong();
+        head = new AtomicLong();
+        droppedCount = new AtomicLong();
+    }
+
+    /**
+     * adds an element, callable from any thread
+     * @param element element to add
+     * @return false if the buffer was full and the element was dropped
+     */
+    public boolean offer(T element) {
+        long sequence;
+        do {
+            sequence = tail.get();
+            if (sequence - head.get() >= slots.length()) {
+                droppedCount.incrementAndGet();
+                return false;
+            }
+        } while (!tail.compareAndSet(sequence, sequence + 1));
+        slots.lazySet((int) sequence & mask, element);
+        return true;
+    }
+
+    /**
+     * moves the published elements to the list in the order they were claimed, only call from
+     * the single consumer thread
+     * @param target list the elements are added to
+     * @param maxElements most elements to move
+     * @return number of elements moved
+     */
+    public int drainTo(List<T> target, int maxElements) {
+        long sequence = head.get();
+        int count = 0;
+        while (count < maxElements) {
+            int index = (int) sequence & mask;
+            T element = slots.get(index);
+            if (element == null) {
+                //empty, or claimed by a producer that hasn't published yet
+                break;
+            }
+            slots.lazySet(index, null);
+            target.add(element);
+            sequence++;
+            count++;
+        }
+        //frees the slots for producers only after they've been cleared
+        head.lazySet(sequence);
+        return count;
+    }
+
+    /** number of elements currently waiting, approximate while producers are active */
+    public int size() {
+        return (int) Math.max(0, tail.get() - head.get());
+    }
+
+    public int capacity() {
+        return slots.length();
+    }
+
+    /** number of elements dropped because the buffer was full */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+}
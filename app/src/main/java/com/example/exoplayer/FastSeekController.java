@@ -0,0 +1,297 @@
+package com.example.exoplayer;
+
+import android.os.Handler;
+import android.os.SystemClock;
+import android.util.Log;
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.ExoPlayer;
+import com.google.android.exoplayer2.Player;
+import com.google.android.exoplayer2.SeekParameters;
+import com.google.android.exoplayer2.Timeline;
+import com.google.android.exoplayer2.source.dash.manifest.AdaptationSet;
+import com.google.android.exoplayer2.source.dash.manifest.DashManifest;
+import com.google.android.exoplayer2.source.dash.manifest.Period;
+import com.google.android.exoplayer2.source.dash.manifest.RangedUri;
+import com.google.android.exoplayer2.source.dash.manifest.Representation;
+import com.google.android.exoplayer2.ui.TimeBar;
+import com.google.android.exoplayer2.upstream.BandwidthMeter;
+import com.google.android.exoplayer2.upstream.TransferListener;
+import com.google.android.exoplayer2.upstream.cache.CacheDataSource;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Makes seeking in long VOD assets cheap.
+ *
+ * <ul>
+ *   <li>Once the manifest is known, the initialization data and sidx segment indexes of every
+ *   audio and video rendition are written to the preload cache, so a seek never waits for an index
+ *   and switching renditions afterwards doesn't either.
+ *   <li>While the time bar is scrubbed seeks snap to the closest sync sample, so the position is
+ *   shown without decoding forward from the previous keyframe.
+ *   <li>After a seek the player's bandwidth meter reports the lowest estimate until the first
+ *   frame is rendered, so the first segments come from the lowest rendition and adaptive selection
+ *   upgrades from there.
+ * </ul>
+ *
+ * The time from each seek to its first rendered frame is reported through {@link Callback}.
+ */
+public final class FastSeekController implements Player.Listener, TimeBar.OnScrubListener {
+
+    /** Receives the seek to first frame latency. */
+    public interface Callback {
+        /**
+         * called on the main thread when the first frame after a seek is rendered
+         * @param controller the controller that measured the seek
+         * @param latencyMs time from the seek to the first frame
+         */
+        void onSeekLatency(FastSeekController controller, long latencyMs);
+    }
+
+    private static final String TAG = "FastSeekController";
+
+    private final SeekBandwidthMeter bandwidthMeter;
+    private final ExecutorService executor;
+    @Nullable private ExoPlayer player;
+    @Nullable private TimeBar timeBar;
+    @Nullable private SegmentCacheWriter segmentCacheWriter;
+    @Nullable private Callback callback;
+    @Nullable private Object prefetchedManifest;
+
+    private boolean scrubbing;
+    private long seekStartMs;
+    private long lastLatencyMs;
+    private long latencySumMs;
+    private int seekCount;
+
+    /**
+     * @param bandwidthMeter the player's bandwidth meter, wrapped by {@link #getBandwidthMeter()}
+     */
+    public FastSeekController(BandwidthMeter bandwidthMeter) {
+        this.bandwidthMeter = new SeekBandwidthMeter(bandwidthMeter);
+        executor = Executors.newSingleThreadExecutor();
+        seekStartMs = C.TIME_UNSET;
+        lastLatencyMs = C.TIME_UNSET;
+    }
+
+    /**
+     * the bandwidth meter to build the player with, it is what drops to the lowest rendition
+     * after a seek
+     */
+    public BandwidthMeter getBandwidthMeter() {
+        return bandwidthMeter;
+    }
+
+    public void setCallback(@Nullable Callback callback) {
+        this.callback = callback;
+    }
+
+    /**
+     * starts following the player and the time bar
+     * @param player player built with {@link #getBandwidthMeter()}
+     * @param timeBar the player view's time bar, null if there is none
+     * @param prefetchDataSourceFactory writes to the cache the player reads through
+     */
+    public void attach(
+            ExoPlayer player,
+            @Nullable TimeBar timeBar,
+            CacheDataSource.Factory prefetchDataSourceFactory) {
+        this.player = player;
+        this.timeBar = timeBar;
+        segmentCacheWriter = new SegmentCacheWriter(prefetchDataSourceFactory);
+        player.addListener(this);
+        if (timeBar != null) {
+            timeBar.addListener(this);
+        }
+    }
+
+    /** stops following the player and cancels the prefetch, can't be attached again */
+    public void release() {
+        if (player != null) {
+            player.removeListener(this);
+            player = null;
+        }
+        if (timeBar != null) {
+            timeBar.removeListener(this);
+            timeBar = null;
+        }
+        if (segmentCacheWriter != null) {
+            segmentCacheWriter.cancel();
+        }
+        executor.shutdownNow();
+        bandwidthMeter.setLowestEstimate(false);
+    }
+
+    /** latency of the last seek, {@link C#TIME_UNSET} before the first one */
+    public long getLastSeekLatencyMs() {
+        return lastLatencyMs;
+    }
+
+    /** average latency of all seeks so far, {@link C#TIME_UNSET} before the first one */
+    public long getAverageSeekLatencyMs() {
+        return seekCount == 0 ? C.TIME_UNSET : latencySumMs / seekCount;
+    }
+
+    public int getSeekCount() {
+        return seekCount;
+    }
+
+    @Override
+    public void onScrubStart(TimeBar timeBar, long position) {
+        scrubbing = true;
+        if (player != null) {
+            player.setSeekParameters(SeekParameters.CLOSEST_SYNC);
+        }
+    }
+
+    @Override
+    public void onScrubMove(TimeBar timeBar, long position) {
+        //the control view seeks on stop, nothing to do until then
+    }
+
+    @Override
+    public void onScrubStop(TimeBar timeBar, long position, boolean canceled) {
+        //the seek parameters are put back once the seek has rendered, see onRenderedFirstFrame
+        scrubbing = false;
+    }
+
+    @Override
+    public void onPositionDiscontinuity(
+            Player.PositionInfo oldPosition, Player.PositionInfo newPosition, int reason) {
+        if (reason != Player.DISCONTINUITY_REASON_SEEK) {
+            return;
+        }
+        seekStartMs = SystemClock.elapsedRealtime();
+        bandwidthMeter.setLowestEstimate(true);
+    }
+
+    @Override
+    public void onRenderedFirstFrame() {
+        onSeekRendered();
+    }
+
+    @Override
+    public void onPlaybackStateChanged(int playbackState) {
+        //audio only items never render a frame, being ready is as far as they get
+        if (playbackState == Player.STATE_READY && player != null && player.getVideoFormat() == null) {
+            onSeekRendered();
+        }
+    }
+
+    @Override
+    public void onTimelineChanged(Timeline timeline, int reason) {
+        if (player != null && player.getCurrentManifest() instanceof DashManifest) {
+            prefetchSegmentIndexes((DashManifest) player.getCurrentManifest());
+        }
+    }
+
+    private void onSeekRendered() {
+        bandwidthMeter.setLowestEstimate(false);
+        if (!scrubbing && player != null) {
+            player.setSeekParameters(SeekParameters.DEFAULT);
+        }
+        if (seekStartMs == C.TIME_UNSET) {
+            return;
+        }
+        lastLatencyMs = SystemClock.elapsedRealtime() - seekStartMs;
+        seekStartMs = C.TIME_UNSET;
+        latencySumMs += lastLatencyMs;
+        seekCount++;
+        Log.d(TAG, "Seek to first frame " + lastLatencyMs + "ms, avg " + getAverageSeekLatencyMs() + "ms");
+        if (callback != null) {
+            callback.onSeekLatency(this, lastLatencyMs);
+        }
+    }
+
+    /**
+     * writes the initialization data and segment index of every audio and video rendition of the
+     * current period to the cache, once per manifest
+     */
+    private void prefetchSegmentIndexes(DashManifest manifest) {
+        if (manifest == prefetchedManifest || manifest.dynamic || segmentCacheWriter == null) {
+            return;
+        }
+        prefetchedManifest = manifest;
+        Period period = manifest.getPeriod(0);
+        SegmentCacheWriter writer = segmentCacheWriter;
+        executor.execute(() -> {
+            long startMs = SystemClock.elapsedRealtime();
+            long bytes = 0;
+            int count = 0;
+            for (AdaptationSet adaptationSet : period.adaptationSets) {
+                if (adaptationSet.type != C.TRACK_TYPE_VIDEO && adaptationSet.type != C.TRACK_TYPE_AUDIO) {
+                    continue;
+                }
+                for (Representation representation : adaptationSet.representations) {
+                    try {
+                        bytes += prefetch(writer, representation);
+                        count++;
+                    } catch (IOException e) {
+                        Log.w(TAG, "Failed to prefetch index of " + representation.format.id, e);
+                    }
+                    if (Thread.currentThread().isInterrupted()) {
+                        return;
+                    }
+                }
+            }
+            Log.d(TAG, "Prefetched indexes of " + count + " renditions, " + bytes + " bytes in "
+                    + (SystemClock.elapsedRealtime() - startMs) + "ms");
+        });
+    }
+
+    private static long prefetch(SegmentCacheWriter writer, Representation representation)
+            throws IOException {
+        long bytes = 0;
+        RangedUri initializationUri = representation.getInitializationUri();
+        if (initializationUri != null) {
+            bytes += writer.cache(representation, initializationUri);
+        }
+        //template based renditions have their index in the manifest, only sidx ones need a load
+        RangedUri indexUri = representation.getIndex() == null ? representation.getIndexUri() : null;
+        if (indexUri != null) {
+            bytes += writer.cache(representation, indexUri);
+        }
+        return bytes;
+    }
+
+    /** Passes the wrapped estimate through except while a seek is waiting for its first frame. */
+    private static final class SeekBandwidthMeter implements BandwidthMeter {
+
+        //low enough that adaptive selection always picks the lowest rendition
+        private static final long LOWEST_ESTIMATE = 1;
+
+        private final BandwidthMeter bandwidthMeter;
+        private volatile boolean lowestEstimate;
+
+        SeekBandwidthMeter(BandwidthMeter bandwidthMeter) {
+            this.bandwidthMeter = bandwidthMeter;
+        }
+
+        void setLowestEstimate(boolean lowestEstimate) {
+            this.lowestEstimate = lowestEstimate;
+        }
+
+        @Override
+        public long getBitrateEstimate() {
+            return lowestEstimate ? LOWEST_ESTIMATE : bandwidthMeter.getBitrateEstimate();
+        }
+
+        @Nullable
+        @Override
+        public TransferListener getTransferListener() {
+            return bandwidthMeter.getTransferListener();
+        }
+
+        @Override
+        public void addEventListener(Handler eventHandler, EventListener eventListener) {
+            bandwidthMeter.addEventListener(eventHandler, eventListener);
+        }
+
+        @Override
+        public void removeEventListener(EventListener eventListener) {
+            bandwidthMeter.removeEventListener(eventListener);
+        }
+    }
+}
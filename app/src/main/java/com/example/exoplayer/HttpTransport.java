@@ -0,0 +1,82 @@
+package com.example.exoplayer;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+
+/**
+ * The protocols the shared http client is allowed to speak, and the client settings that go with
+ * them.
+ *
+ * With {@link #HTTP_2} the audio, video and license loads to one host are multiplexed as streams
+ * on a single connection instead of each load holding its own HTTP/1.1 connection. Hosts that
+ * don't offer h2 through ALPN still fall back to HTTP/1.1.
+ */
+public enum HttpTransport {
+
+    /**
+     * one request per connection at a time, connections are still pooled and kept alive. Loads per
+     * host stay at OkHttp's default of 5, about what an HTTP/1.1 stack opens to one host
+     */
+    HTTP_1_1(
+            Collections.singletonList(Protocol.HTTP_1_1),
+            /* maxRequestsPerHost= */ 5,
+            /* pingIntervalSeconds= */ 0),
+
+    /**
+     * requests to the same host share one multiplexed connection. The protocol list is OkHttp's
+     * own default, what this adds is the higher per host limit, since the loads are streams and
+     * not connections, and pings that notice a dead idle connection before a segment load needs it
+     */
+    HTTP_2(
+            Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1),
+            /* maxRequestsPerHost= */ 16,
+            /* pingIntervalSeconds= */ 30),
+
+    /**
+     * h2 over plain TCP without ALPN, only for servers known to speak it such as a local stand-in
+     * server, otherwise like {@link #HTTP_2}
+     */
+    H2_PRIOR_KNOWLEDGE(
+            Collections.singletonList(Protocol.H2_PRIOR_KNOWLEDGE),
+            /* maxRequestsPerHost= */ 16,
+            /* pingIntervalSeconds= */ 30);
+
+    private final List<Protocol> protocols;
+    private final int maxRequestsPerHost;
+    private final long pingIntervalSeconds;
+
+    HttpTransport(List<Protocol> protocols, int maxRequestsPerHost, long pingIntervalSeconds) {
+        this.protocols = protocols;
+        this.maxRequestsPerHost = maxRequestsPerHost;
+        this.pingIntervalSeconds = pingIntervalSeconds;
+    }
+
+    /** protocols to hand to {@link okhttp3.OkHttpClient.Builder#protocols} */
+    public List<Protocol> getProtocols() {
+        return protocols;
+    }
+
+    /** number of loads allowed in flight to one host */
+    public int getMaxRequestsPerHost() {
+        return maxRequestsPerHost;
+    }
+
+    /**
+     * sets the protocols, per host limit and ping interval of this transport
+     * @param builder builder of the client
+     * @return the same builder
+     */
+    public OkHttpClient.Builder apply(OkHttpClient.Builder builder) {
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequestsPerHost(maxRequestsPerHost);
+        return builder
+                .protocols(protocols)
+                .dispatcher(dispatcher)
+                .pingInterval(pingIntervalSeconds, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,127 @@
+package com.example.exoplayer;
+
+import android.content.Context;
+import androidx.annotation.Nullable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Keeps the key set ids of renewed offline licenses, by download id.
+ *
+ * The download manager can only change a download's request by adding it again, which queues the
+ * download to run once more. A renewal only changes the key set id, so it is kept here instead and
+ * takes precedence over the one in the {@link com.google.android.exoplayer2.offline.DownloadRequest}.
+ *
+ * The ids are looked up on the main thread, the file is written outside of the lock they are
+ * looked up under.
+ */
+public final class KeySetIdStore {
+
+    private static final String FILE_NAME = "offline_key_set_ids";
+    private static final int VERSION = 1;
+
+    private final VersionedFile file;
+    private final Object writeLock;
+    private final Map<String, byte[]> keySetIds;
+    //count of changes, a snapshot older than the one already written is dropped
+    private int changeCount;
+    private int writtenChangeCount;
+
+    /**
+     * @param context any context
+     */
+    public KeySetIdStore(Context context) {
+        this(new File(context.getFilesDir(), FILE_NAME));
+    }
+
+    /**
+     * @param file file the ids are kept in
+     */
+    KeySetIdStore(File file) {
+        this.file = new VersionedFile(file, VERSION);
+        writeLock = new Object();
+        @Nullable Map<String, byte[]> stored = this.file.read(KeySetIdStore::readKeySetIds);
+        keySetIds = stored != null ? stored : new HashMap<>();
+    }
+
+    /**
+     * returns the key set id to use for a download's license
+     * @param downloadId id of the download request
+     * @param requestKeySetId key set id the download request carries
+     * @return the renewed key set id if the license was renewed, otherwise the request's
+     */
+    @Nullable
+    public synchronized byte[] get(String downloadId, @Nullable byte[] requestKeySetId) {
+        @Nullable byte[] renewedKeySetId = keySetIds.get(downloadId);
+        return renewedKeySetId != null ? renewedKeySetId : requestKeySetId;
+    }
+
+    /**
+     * stores the key set id of a renewed license
+     * @param downloadId id of the download request
+     * @param keySetId key set id of the renewed license
+     */
+    public void put(String downloadId, byte[] keySetId) {
+        Map<String, byte[]> snapshot;
+        int snapshotChangeCount;
+        synchronized (this) {
+            keySetIds.put(downloadId, keySetId);
+            snapshot = new HashMap<>(keySetIds);
+            snapshotChangeCount = ++changeCount;
+        }
+        write(snapshot, snapshotChangeCount);
+    }
+
+    /**
+     * forgets the key set id when the download goes away
+     * @param downloadId id of the download request
+     */
+    public void remove(String downloadId) {
+        Map<String, byte[]> snapshot;
+        int snapshotChangeCount;
+        synchronized (this) {
+            if (keySetIds.remove(downloadId) == null) {
+                return;
+            }
+            snapshot = new HashMap<>(keySetIds);
+            snapshotChangeCount = ++changeCount;
+        }
+        write(snapshot, snapshotChangeCount);
+    }
+
+    private void write(Map<String, byte[]> snapshot, int snapshotChangeCount) {
+        synchronized (writeLock) {
+            if (snapshotChangeCount < writtenChangeCount) {
+                return;
+            }
+            writtenChangeCount = snapshotChangeCount;
+            file.write(output -> writeKeySetIds(output, snapshot));
+        }
+    }
+
+    private static Map<String, byte[]> readKeySetIds(DataInputStream input) throws IOException {
+        Map<String, byte[]> keySetIds = new HashMap<>();
+        int count = input.readInt();
+        for (int i = 0; i < count; i++) {
+            String downloadId = input.readUTF();
+            byte[] keySetId = new byte[input.readInt()];
+            input.readFully(keySetId);
+            keySetIds.put(downloadId, keySetId);
+        }
+        return keySetIds;
+    }
+
+    private static void writeKeySetIds(DataOutputStream output, Map<String, byte[]> keySetIds)
+            throws IOException {
+        output.writeInt(keySetIds.size());
+        for (Map.Entry<String, byte[]> entry : keySetIds.entrySet()) {
+            output.writeUTF(entry.getKey());
+            output.writeInt(entry.getValue().length);
+            output.write(entry.getValue());
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.example.exoplayer;
+
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.ExoPlayer;
+import com.google.android.exoplayer2.MediaItem;
+import com.google.android.exoplayer2.Player;
+import com.google.android.exoplayer2.source.MediaSource;
+import com.google.android.exoplayer2.util.Assertions;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A playlist that only gives the player media sources for the current item, the one before it and
+ * a small look-ahead window after it.
+ *
+ * Items are only known by their index until they enter the window, so setting up a playlist of
+ * thousands of items costs the same as one. Having the next items in the player's playlist lets
+ * the player prepare the next period (manifest, DRM session and first segments) while the current
+ * one is still playing, so transitions are gapless. The previous item is kept so the player's own
+ * seek to previous can go back past the current item. Items that fall out of the window on either
+ * side are removed from the player, which releases their sources.
+ *
+ * Indexes given to and returned from this class are playlist indexes, not indexes into the
+ * player's own (windowed) playlist.
+ */
+public final class LazyPlaylist implements Player.Listener {
+
+    /** Creates media sources for playlist items when they enter the window. */
+    public interface MediaSourceProvider {
+        /**
+         * called on the player's application thread when the item enters the window
+         * @param index playlist index of the item
+         * @return media source for the item
+         */
+        MediaSource createMediaSource(int index);
+    }
+
+    /** number of items after the current one the player gets by default */
+    public static final int DEFAULT_LOOKAHEAD = 1;
+    //number of items before the current one kept in the player's playlist
+    private static final int LOOKBEHIND = 1;
+
+    private final ExoPlayer player;
+    private final int size;
+    private final MediaSourceProvider mediaSourceProvider;
+    private final int lookahead;
+    private int windowStart;
+
+    /**
+     * @param player player to play the playlist on, the playlist replaces anything set on it
+     * @param size number of items in the playlist
+     * @param mediaSourceProvider creates the sources of items entering the window
+     * @param lookahead number of items after the current one to keep in the player's playlist
+     */
+    public LazyPlaylist(
+            ExoPlayer player, int size, MediaSourceProvider mediaSourceProvider, int lookahead) {
+        Assertions.checkArgument(size > 0 && lookahead >= 0);
+        this.player = player;
+        this.size = size;
+        this.mediaSourceProvider = mediaSourceProvider;
+        this.lookahead = lookahead;
+        player.addListener(this);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /** playlist index of the item the player is playing */
+    public int getCurrentIndex() {
+        return windowStart + player.getCurrentMediaItemIndex();
+    }
+
+    /** playlist index of the next item to play, or {@link C#INDEX_UNSET} at the end */
+    public int getNextIndex() {
+        int next = getCurrentIndex() + 1;
+        return next < size ? next : C.INDEX_UNSET;
+    }
+
+    /**
+     * moves the window to the item and starts it at the position, sources of the items that
+     * were in the old window are released
+     * @param index playlist index of the item to play
+     * @param positionMs position in the item, or {@link C#TIME_UNSET} for the default position
+     */
+    public void seekTo(int index, long positionMs) {
+        Assertions.checkIndex(index, 0, size);
+        windowStart = Math.max(0, index - LOOKBEHIND);
+        int windowEnd = Math.min(size, index + lookahead + 1);
+        List<MediaSource> mediaSources = new ArrayList<>();
+        for (int i = windowStart; i < windowEnd; i++) {
+            mediaSources.add(mediaSourceProvider.createMediaSource(i));
+        }
+        player.setMediaSources(mediaSources, /* startMediaItemIndex= */ index - windowStart, positionMs);
+    }
+
+    /** stops following the player's transitions */
+    public void release() {
+        player.removeListener(this);
+    }
+
+    @Override
+    public void onMediaItemTransition(@Nullable MediaItem mediaItem, int reason) {
+        if (reason == Player.MEDIA_ITEM_TRANSITION_REASON_PLAYLIST_CHANGED) {
+            //caused by our own changes to the player's playlist
+            return;
+        }
+        slideWindow();
+    }
+
+    /**
+     * moves the window so it again spans from the item before the current one to the look-ahead
+     * after it, called on every transition so the window follows playback in either direction
+     */
+    private void slideWindow() {
+        int current = getCurrentIndex();
+        int start = Math.max(0, current - LOOKBEHIND);
+        int end = Math.min(size, current + lookahead + 1);
+        int windowEnd = windowStart + player.getMediaItemCount();
+        //drop what fell out of the window, neither side can be the current item
+        if (windowEnd > end) {
+            player.removeMediaItems(end - windowStart, windowEnd - windowStart);
+            windowEnd = end;
+        }
+        if (start > windowStart) {
+            player.removeMediaItems(0, start - windowStart);
+            windowStart = start;
+        }
+        while (windowStart > start) {
+            windowStart--;
+            player.addMediaSource(/* index= */ 0, mediaSourceProvider.createMediaSource(windowStart));
+        }
+        while (windowEnd < end) {
+            player.addMediaSource(mediaSourceProvider.createMediaSource(windowEnd));
+            windowEnd++;
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package com.example.exoplayer;
+
+import android.util.Log;
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.Player;
+import com.google.android.exoplayer2.util.Clock;
+import com.google.android.exoplayer2.util.HandlerWrapper;
+
+/**
+ * Samples how far behind the live edge the player is sitting so the latency of low latency
+ * streams can be watched and reported.
+ *
+ * Sampling runs on the looper of the player and only while the current item is live.
+ */
+public final class LiveLatencyMonitor implements Player.Listener {
+
+    /** Receives every new latency sample. */
+    public interface Callback {
+        /**
+         * called on the player's looper after every sample
+         * @param monitor the monitor that took the sample
+         */
+        void onLatencySample(LiveLatencyMonitor monitor);
+    }
+
+    private static final String TAG = "LiveLatencyMonitor";
+
+    private final Player player;
+    private final LowLatencyLiveConfig config;
+    private final long sampleIntervalMs;
+    private final HandlerWrapper handler;
+    private final Runnable sampleRunnable;
+    @Nullable private Callback callback;
+
+    private long currentOffsetMs;
+    private long minOffsetMs;
+    private long maxOffsetMs;
+    private long offsetSumMs;
+    private int sampleCount;
+    private int outOfRangeCount;
+    private boolean wasInRange;
+    private boolean started;
+
+    /**
+     * @param player player to sample
+     * @param config low latency config the samples are checked against
+     * @param sampleIntervalMs how often to sample while the player is live
+     */
+    public LiveLatencyMonitor(Player player, LowLatencyLiveConfig config, long sampleIntervalMs) {
+        this(player, config, sampleIntervalMs, Clock.DEFAULT);
+    }
+
+    /** like the public constructor, the samples are scheduled on handlers of the given clock */
+    LiveLatencyMonitor(
+            Player player, LowLatencyLiveConfig config, long sampleIntervalMs, Clock clock) {
+        this.player = player;
+        this.config = config;
+        this.sampleIntervalMs = sampleIntervalMs;
+        handler = clock.createHandler(player.getApplicationLooper(), /* callback= */ null);
+        sampleRunnable = this::sample;
+        reset();
+    }
+
+    public void setCallback(@Nullable Callback callback) {
+        this.callback = callback;
+    }
+
+    /** starts listening to the player and sampling whenever the current item is live */
+    public void start() {
+        if (started) {
+            return;
+        }
+        started = true;
+        player.addListener(this);
+        scheduleSample();
+    }
+
+    /** stops sampling, the collected values are kept until {@link #reset()} */
+    public void stop() {
+        if (!started) {
+            return;
+        }
+        started = false;
+        player.removeListener(this);
+        handler.removeCallbacksAndMessages(/* token= */ null);
+    }
+
+    /** clears all collected samples */
+    public void reset() {
+        currentOffsetMs = C.TIME_UNSET;
+        minOffsetMs = Long.MAX_VALUE;
+        maxOffsetMs = Long.MIN_VALUE;
+        offsetSumMs = 0;
+        sampleCount = 0;
+        outOfRangeCount = 0;
+        wasInRange = true;
+    }
+
+    /** latest latency to the live edge in ms, or {@link C#TIME_UNSET} if nothing was sampled */
+    public long getCurrentOffsetMs() {
+        return currentOffsetMs;
+    }
+
+    /** average latency to the live edge in ms, or {@link C#TIME_UNSET} if nothing was sampled */
+    public long getAverageOffsetMs() {
+        return sampleCount == 0 ? C.TIME_UNSET : offsetSumMs / sampleCount;
+    }
+
+    public long getMinOffsetMs() {
+        return sampleCount == 0 ? C.TIME_UNSET : minOffsetMs;
+    }
+
+    public long getMaxOffsetMs() {
+        return sampleCount == 0 ? C.TIME_UNSET : maxOffsetMs;
+    }
+
+    public int getSampleCount() {
+        return sampleCount;
+    }
+
+    /** number of samples that were outside of the offset range of the config */
+    public int getOutOfRangeCount() {
+        return outOfRangeCount;
+    }
+
+    /** the speed the player is currently using to hold the target offset */
+    public float getPlaybackSpeed() {
+        return player.getPlaybackParameters().speed;
+    }
+
+    @Override
+    public void onIsPlayingChanged(boolean isPlaying) {
+        handler.removeCallbacksAndMessages(/* token= */ null);
+        scheduleSample();
+    }
+
+    private void scheduleSample() {
+        handler.postDelayed(sampleRunnable, sampleIntervalMs);
+    }
+
+    private void sample() {
+        if (player.isPlaying() && player.isCurrentMediaItemLive()) {
+            long offsetMs = player.getCurrentLiveOffset();
+            if (offsetMs != C.TIME_UNSET) {
+                currentOffsetMs = offsetMs;
+                minOffsetMs = Math.min(minOffsetMs, offsetMs);
+                maxOffsetMs = Math.max(maxOffsetMs, offsetMs);
+                offsetSumMs += offsetMs;
+                sampleCount++;
+                boolean inRange = config.isInRange(offsetMs);
+                if (!inRange) {
+                    outOfRangeCount++;
+                }
+                if (inRange != wasInRange) {
+                    //only log when the offset drifts out of the range or comes back into it
+                    wasInRange = inRange;
+                    Log.d(TAG, "live offset " + offsetMs + "ms " + (inRange ? "back in" : "out of")
+                            + " range (target " + config.targetOffsetMs + "ms) speed " + getPlaybackSpeed());
+                }
+                if (callback != null) {
+                    callback.onLatencySample(this);
+                }
+            }
+        }
+        if (started) {
+            scheduleSample();
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package com.example.exoplayer;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.DefaultLivePlaybackSpeedControl;
+import com.google.android.exoplayer2.LivePlaybackSpeedControl;
+import com.google.android.exoplayer2.MediaItem;
+import com.google.android.exoplayer2.util.Assertions;
+
+/**
+ * Settings for playing low-latency live DASH streams.
+ *
+ * CMAF chunks are consumed as they arrive: the DASH source requests segments early using the
+ * manifest's availabilityTimeOffset and the http data source reads the chunked response as it
+ * streams in, so the only thing we tune here is how far behind the live edge we sit, how hard the
+ * player is allowed to speed up or slow down to stay there and how much it buffers.
+ */
+public final class LowLatencyLiveConfig {
+
+    /** Builder for {@link LowLatencyLiveConfig}. */
+    public static final class Builder {
+
+        private long targetOffsetMs;
+        private long minOffsetMs;
+        private long maxOffsetMs;
+        private float minPlaybackSpeed;
+        private float maxPlaybackSpeed;
+        private int minBufferMs;
+        private int maxBufferMs;
+        private int bufferForPlaybackMs;
+        private int bufferForPlaybackAfterRebufferMs;
+
+        public Builder() {
+            targetOffsetMs = 3_000;
+            minOffsetMs = 1_500;
+            maxOffsetMs = 10_000;
+            minPlaybackSpeed = 0.97f;
+            maxPlaybackSpeed = 1.03f;
+            minBufferMs = 1_000;
+            maxBufferMs = 10_000;
+            bufferForPlaybackMs = 500;
+            bufferForPlaybackAfterRebufferMs = 1_000;
+        }
+
+        /**
+         * sets the offset from the live edge the player tries to hold
+         * @param targetOffsetMs target live offset in milliseconds
+         * @return this builder
+         */
+        public Builder setTargetOffsetMs(long targetOffsetMs) {
+            this.targetOffsetMs = targetOffsetMs;
+            return this;
+        }
+
+        /**
+         * sets the range the target offset can be moved inside of when the player has to back off
+         * after rebuffering
+         * @param minOffsetMs smallest allowed live offset in milliseconds
+         * @param maxOffsetMs largest allowed live offset in milliseconds
+         * @return this builder
+         */
+        public Builder setOffsetRangeMs(long minOffsetMs, long maxOffsetMs) {
+            this.minOffsetMs = minOffsetMs;
+            this.maxOffsetMs = maxOffsetMs;
+            return this;
+        }
+
+        /**
+         * sets the playback speeds the player may use to catch up with or fall back to the target
+         * @param minPlaybackSpeed slowest allowed speed
+         * @param maxPlaybackSpeed fastest allowed speed
+         * @return this builder
+         */
+        public Builder setPlaybackSpeedRange(float minPlaybackSpeed, float maxPlaybackSpeed) {
+            this.minPlaybackSpeed = minPlaybackSpeed;
+            this.maxPlaybackSpeed = maxPlaybackSpeed;
+            return this;
+        }
+
+        /**
+         * sets the buffer durations used by the load control, see
+         * {@link MemoryAwareLoadControl.Builder#setBufferDurationsMs(int, int, int, int)}
+         * @return this builder
+         */
+        public Builder setBufferDurationsMs(
+                int minBufferMs,
+                int maxBufferMs,
+                int bufferForPlaybackMs,
+                int bufferForPlaybackAfterRebufferMs) {
+            this.minBufferMs = minBufferMs;
+            this.maxBufferMs = maxBufferMs;
+            this.bufferForPlaybackMs = bufferForPlaybackMs;
+            this.bufferForPlaybackAfterRebufferMs = bufferForPlaybackAfterRebufferMs;
+            return this;
+        }
+
+        public LowLatencyLiveConfig build() {
+            Assertions.checkArgument(minOffsetMs <= targetOffsetMs && targetOffsetMs <= maxOffsetMs);
+            Assertions.checkArgument(0 < minPlaybackSpeed && minPlaybackSpeed <= 1f);
+            Assertions.checkArgument(maxPlaybackSpeed >= 1f);
+            return new LowLatencyLiveConfig(this);
+        }
+    }
+
+    public final long targetOffsetMs;
+    public final long minOffsetMs;
+    public final long maxOffsetMs;
+    public final float minPlaybackSpeed;
+    public final float maxPlaybackSpeed;
+    private final int minBufferMs;
+    private final int maxBufferMs;
+    private final int bufferForPlaybackMs;
+    private final int bufferForPlaybackAfterRebufferMs;
+
+    private LowLatencyLiveConfig(Builder builder) {
+        targetOffsetMs = builder.targetOffsetMs;
+        minOffsetMs = builder.minOffsetMs;
+        maxOffsetMs = builder.maxOffsetMs;
+        minPlaybackSpeed = builder.minPlaybackSpeed;
+        maxPlaybackSpeed = builder.maxPlaybackSpeed;
+        minBufferMs = builder.minBufferMs;
+        maxBufferMs = builder.maxBufferMs;
+        bufferForPlaybackMs = builder.bufferForPlaybackMs;
+        bufferForPlaybackAfterRebufferMs = builder.bufferForPlaybackAfterRebufferMs;
+    }
+
+    /**
+     * the live configuration for the media item, this overrides whatever the manifest's
+     * ServiceDescription asks for
+     */
+    public MediaItem.LiveConfiguration toLiveConfiguration() {
+        return new MediaItem.LiveConfiguration.Builder()
+                .setTargetOffsetMs(targetOffsetMs)
+                .setMinOffsetMs(minOffsetMs)
+                .setMaxOffsetMs(maxOffsetMs)
+                .setMinPlaybackSpeed(minPlaybackSpeed)
+                .setMaxPlaybackSpeed(maxPlaybackSpeed)
+                .build();
+    }
+
+    /**
+     * speed control that nudges the playback speed to hold the target offset. Used as the fallback
+     * when the media item or manifest does not give a speed range.
+     */
+    public LivePlaybackSpeedControl createLivePlaybackSpeedControl() {
+        return new DefaultLivePlaybackSpeedControl.Builder()
+                .setFallbackMinPlaybackSpeed(minPlaybackSpeed)
+                .setFallbackMaxPlaybackSpeed(maxPlaybackSpeed)
+                .build();
+    }
+
+    /**
+     * sets up a load control with buffers small enough that the player never has to wait for a
+     * full segment before it starts or resumes playback
+     * @param builder builder to configure, for example one using the shared allocator
+     * @return the configured builder
+     */
+    public MemoryAwareLoadControl.Builder configureLoadControl(MemoryAwareLoadControl.Builder builder) {
+        return builder
+                .setBufferDurationsMs(
+                        minBufferMs, maxBufferMs, bufferForPlaybackMs, bufferForPlaybackAfterRebufferMs)
+                .setBackBufferMs(0)
+                .setPrioritizeTimeOverSizeThresholds(true);
+    }
+
+    /** returns whether the given live offset is within the configured range */
+    public boolean isInRange(long liveOffsetMs) {
+        return liveOffsetMs != C.TIME_UNSET && liveOffsetMs >= minOffsetMs && liveOffsetMs <= maxOffsetMs;
+    }
+}
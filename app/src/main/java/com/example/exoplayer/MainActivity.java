@@ -1,53 +1,104 @@
 package com.example.exoplayer;
 
+import androidx.annotation.Nullable;
 import androidx.appcompat.app.AppCompatActivity;
+import android.net.Uri;
 import android.os.Bundle;
 import android.util.Log;
 import android.view.View;
 import android.widget.Button;
 import android.widget.LinearLayout;
+import android.widget.TextView;
 import android.widget.Toast;
 import com.google.android.exoplayer2.ExoPlayer;
+import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.PlaybackException;
 import com.google.android.exoplayer2.Player;
 import com.google.android.exoplayer2.TracksInfo;
 import com.google.android.exoplayer2.drm.DefaultDrmSessionManager;
 import com.google.android.exoplayer2.drm.DrmSessionManager;
 import com.google.android.exoplayer2.drm.FrameworkMediaDrm;
+import com.google.android.exoplayer2.offline.DownloadRequest;
+import com.google.android.exoplayer2.offline.DownloadService;
 import com.google.android.exoplayer2.source.MediaSource;
 import com.google.android.exoplayer2.source.dash.DashMediaSource;
 import com.google.android.exoplayer2.trackselection.DefaultTrackSelector;
-import com.google.android.exoplayer2.ui.PlayerView;
 import com.google.android.exoplayer2.ui.StyledPlayerControlView;
 import com.google.android.exoplayer2.ui.StyledPlayerView;
 import com.google.android.exoplayer2.MediaItem;
 import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.upstream.BandwidthMeter;
 import com.google.android.exoplayer2.upstream.DataSource;
-import com.google.android.exoplayer2.upstream.DefaultDataSource;
-import com.google.android.exoplayer2.upstream.DefaultHttpDataSource;
 import com.google.android.exoplayer2.upstream.HttpDataSource;
 import com.google.android.exoplayer2.util.Assertions;
 import com.google.android.exoplayer2.util.Util;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
 
-public class MainActivity extends AppCompatActivity implements View.OnClickListener, StyledPlayerControlView.VisibilityListener, Player.EventListener, Player.Listener {
+public class MainActivity extends AppCompatActivity implements View.OnClickListener, StyledPlayerControlView.VisibilityListener, DownloadTracker.Listener {
     private ExoPlayer player;
     private Button selectTracksButton;
+    private Button downloadButton;
+    private DownloadTracker downloadTracker;
+    private ConnectionPrewarmer connectionPrewarmer;
+    private MemoryGovernor memoryGovernor;
+    private MemoryAwareLoadControl loadControl;
+    private SharedPlaybackResources playbackResources;
+    private BandwidthMeter bandwidthMeter;
+    private LazyPlaylist playlist;
+    private String[] playlistURIs;
+    private DashMediaSource.Factory mediaSourceFactory;
+    private NextItemPreloader nextItemPreloader;
+    private ResumeStateStore resumeStateStore;
+    private boolean fastSeek;
+    private FastSeekController fastSeekController;
+    private ThumbnailCache thumbnailCache;
+    private ThumbnailPreview thumbnailPreview;
+    private PlayerEventPipeline eventPipeline;
+    private RenderCapStore renderCapStore;
+    private RenderMetrics renderMetrics;
     private boolean isShowingTrackSelectionDialog;
     protected LinearLayout debugRootView;
     private DefaultTrackSelector trackSelector;
-    private PlayerView playerView;
+    private StyledPlayerView playerView;
+    private TextView debugTextView;
     private TracksInfo lastSeenTracksInfo;
     private DefaultTrackSelector.Parameters trackSelectionParameters;
     private static final String videoURI = "https://bitmovin-a.akamaihd.net/content/art-of-motion_drm/mpds/11331.mpd";
     private static final String licenseURI = "https://widevine-proxy.appspot.com/proxy";
+    //DASH-IF low latency simulator, 1s CMAF chunks delivered over chunked transfer
+    private static final String liveVideoURI = "https://livesim.dashif.org/livesim/chunkdur_1/ato_7/testpic4_8s/Manifest300.mpd";
+    private static final long liveLatencySampleIntervalMs = 1_000;
+    private static final String traceDirectoryName = "traces";
     private boolean startAutoPlay;
     private int startItemIndex;
     private long startPosition;
+    private boolean lowLatencyLive;
+    private LowLatencyLiveConfig lowLatencyLiveConfig;
+    private LiveLatencyMonitor liveLatencyMonitor;
 
     private static final String KEY_TRACK_SELECTION_PARAMETERS = "track_selection_parameters";
     private static final String KEY_ITEM_INDEX = "item_index";
     private static final String KEY_POSITION = "position";
     private static final String KEY_AUTO_PLAY = "auto_play";
 
+    /** intent extra to play the low latency live stream instead of the DRM protected VOD */
+    public static final String KEY_LOW_LATENCY_LIVE = "low_latency_live";
+    /** intent extra overriding the target live offset in ms for low latency live playback */
+    public static final String KEY_LIVE_TARGET_OFFSET_MS = "live_target_offset_ms";
+    /** intent extra to force plain HTTP/1.1 instead of multiplexed HTTP/2, for comparing the two */
+    public static final String KEY_HTTP1_ONLY = "http1_only";
+    /** intent extra with a base url mirroring the CDN, stalled segment loads are re-issued to it */
+    public static final String KEY_ALTERNATE_CDN_BASE_URI = "alternate_cdn_base_uri";
+    private static final String cdnBaseURI = "https://bitmovin-a.akamaihd.net/";
+    /** intent extra with the manifest urls of a playlist to play instead of the single video */
+    public static final String KEY_PLAYLIST_URIS = "playlist_uris";
+    /** intent extra to turn off fast seeking (sync sample snapping, index prefetch), on by default */
+    public static final String KEY_FAST_SEEK = "fast_seek";
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -55,12 +106,107 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
         debugRootView = findViewById(R.id.controls_root);
         selectTracksButton = findViewById(R.id.select_tracks_button);
         selectTracksButton.setOnClickListener(this);
+        debugTextView = findViewById(R.id.debug_text_view);
+        downloadButton = findViewById(R.id.download_button);
+        downloadButton.setOnClickListener(this);
+
+        lowLatencyLive = getIntent().getBooleanExtra(KEY_LOW_LATENCY_LIVE, false);
+        if (lowLatencyLive) {
+            LowLatencyLiveConfig.Builder builder = new LowLatencyLiveConfig.Builder();
+            long targetOffsetMs = getIntent().getLongExtra(KEY_LIVE_TARGET_OFFSET_MS, C.TIME_UNSET);
+            if (targetOffsetMs != C.TIME_UNSET) {
+                builder.setTargetOffsetMs(targetOffsetMs)
+                        .setOffsetRangeMs(targetOffsetMs / 2, Math.max(targetOffsetMs * 3, 10_000));
+            }
+            lowLatencyLiveConfig = builder.build();
+        }
+
+        //the playlist is only a list of urls, media sources are made when an item is about to play
+        if (lowLatencyLive) {
+            playlistURIs = new String[] {liveVideoURI};
+        } else {
+            playlistURIs = getIntent().getStringArrayExtra(KEY_PLAYLIST_URIS);
+            if (playlistURIs == null || playlistURIs.length == 0) {
+                playlistURIs = new String[] {videoURI};
+            }
+        }
+
+        fastSeek = !lowLatencyLive && getIntent().getBooleanExtra(KEY_FAST_SEEK, true);
+
+        //before anything touches DownloadUtil, the download tracker already builds the http client
+        DownloadUtil.setHttpTransport(
+                getIntent().getBooleanExtra(KEY_HTTP1_ONLY, false)
+                        ? HttpTransport.HTTP_1_1
+                        : HttpTransport.HTTP_2);
+        DownloadUtil.setAlternateCdn(
+                cdnBaseURI, getIntent().getStringExtra(KEY_ALTERNATE_CDN_BASE_URI));
+
+        //open the license and CDN connections as early as possible, all hosts in parallel, so they
+        //are ready before the player's first loads instead of racing them
+        connectionPrewarmer = new ConnectionPrewarmer(
+                DownloadUtil.getHttpClient(), DownloadUtil.getConnectionMetrics());
+        List<String> warmURIs = new ArrayList<>(Arrays.asList(playlistURIs));
+        if (!lowLatencyLive) {
+            warmURIs.add(licenseURI);
+        }
+        connectionPrewarmer.prewarm(warmURIs.toArray(new String[0]));
+
+        downloadTracker = DownloadUtil.getDownloadTracker(this);
+        downloadTracker.addListener(this);
+        startDownloadService();
+        //renew offline licenses while we are online so downloads keep playing on the commute
+        downloadTracker.renewExpiringLicenses();
+
+        //restored before anything is built so the bandwidth meter and first item start from it
+        resumeStateStore = new ResumeStateStore(this);
+        renderCapStore = new RenderCapStore(this);
+        restoreStartState(savedInstanceState);
+
+        //shrinks the player's buffers when the OS is running low on memory
+        memoryGovernor = new MemoryGovernor();
+        getApplication().registerComponentCallbacks(memoryGovernor);
+        playbackResources = SharedPlaybackResources.getInstance(this);
+        //decoded scrub thumbnails, kept across players and trimmed with the buffers
+        thumbnailCache = new ThumbnailCache(ThumbnailCache.DEFAULT_MAX_BYTES);
+        memoryGovernor.register(thumbnailCache);
 
         //initPlayerPart1(); //Player initializer for part 1
         initPlayerPart2(); // Player initializer for part 2
+    }
 
-        //if there is a saved instance it will load it when the player is made
-        //for the moment this is not being used
+    /**
+     * sets where the player starts, from the saved instance if there is one and otherwise from
+     * the resume state on disk, which also survives the process being killed
+     * @param savedInstanceState saved instance passed to onCreate
+     */
+    private void restoreStartState(Bundle savedInstanceState) {
+        trackSelectionParameters =
+                new DefaultTrackSelector.ParametersBuilder(/* context= */ this).build();
+        clearStartPosition();
+        ResumeStateStore.State state = lowLatencyLive ? null : resumeStateStore.read();
+        if (state != null) {
+            //start at the quality we left off at instead of ramping up from the network type default
+            if (state.bitrateEstimate > 0) {
+                SharedPlaybackResources.setInitialBitrateEstimate(state.bitrateEstimate);
+            } else if (state.videoBitrate != Format.NO_VALUE) {
+                SharedPlaybackResources.setInitialBitrateEstimate(state.videoBitrate);
+            }
+            trackSelectionParameters =
+                    new DefaultTrackSelector.ParametersBuilder(/* context= */ this)
+                            .setMaxVideoSize(state.maxVideoWidth, state.maxVideoHeight)
+                            .setMaxVideoBitrate(state.maxVideoBitrate)
+                            .setPreferredAudioLanguage(state.preferredAudioLanguage)
+                            .setPreferredTextLanguage(state.preferredTextLanguage)
+                            .build();
+            //the playlist may have changed since, only resume if the item is still the same one
+            if (state.itemIndex != C.INDEX_UNSET
+                    && state.itemIndex < playlistURIs.length
+                    && playlistURIs[state.itemIndex].equals(state.manifestUri)) {
+                startAutoPlay = state.autoPlay;
+                startItemIndex = state.itemIndex;
+                startPosition = state.positionMs;
+            }
+        }
         if (savedInstanceState != null) {
             // Restore as DefaultTrackSelector.Parameters in case ExoPlayer specific parameters were set.
             trackSelectionParameters =
@@ -69,10 +215,58 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
             startAutoPlay = savedInstanceState.getBoolean(KEY_AUTO_PLAY);
             startItemIndex = savedInstanceState.getInt(KEY_ITEM_INDEX);
             startPosition = savedInstanceState.getLong(KEY_POSITION);
-        } else {
-            trackSelectionParameters =
-                    new DefaultTrackSelector.ParametersBuilder(/* context= */ this).build();
-            clearStartPosition();
+        }
+    }
+
+    /**
+     * writes where playback is to disk so a cold start can pick up from there
+     */
+    private void saveResumeState() {
+        if (lowLatencyLive) {
+            return;
+        }
+        ResumeStateStore.State state = new ResumeStateStore.State();
+        if (startItemIndex != C.INDEX_UNSET) {
+            state.manifestUri = playlistURIs[startItemIndex];
+            state.itemIndex = startItemIndex;
+            state.positionMs = startPosition;
+        }
+        state.autoPlay = startAutoPlay;
+        state.bitrateEstimate = playbackResources.getBandwidthMeter().getTotalBitrateEstimate();
+        Format videoFormat = player.getVideoFormat();
+        if (videoFormat != null) {
+            state.videoBitrate = videoFormat.bitrate;
+        }
+        state.maxVideoWidth = trackSelectionParameters.maxVideoWidth;
+        state.maxVideoHeight = trackSelectionParameters.maxVideoHeight;
+        state.maxVideoBitrate = trackSelectionParameters.maxVideoBitrate;
+        if (!trackSelectionParameters.preferredAudioLanguages.isEmpty()) {
+            state.preferredAudioLanguage = trackSelectionParameters.preferredAudioLanguages.get(0);
+        }
+        if (!trackSelectionParameters.preferredTextLanguages.isEmpty()) {
+            state.preferredTextLanguage = trackSelectionParameters.preferredTextLanguages.get(0);
+        }
+        resumeStateStore.write(state);
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        downloadTracker.removeListener(this);
+        connectionPrewarmer.release();
+        memoryGovernor.unregister(thumbnailCache);
+        getApplication().unregisterComponentCallbacks(memoryGovernor);
+    }
+
+    /**
+     * starts the download service so downloads left unfinished by a previous run resume
+     */
+    private void startDownloadService() {
+        try {
+            DownloadService.start(this, OfflineDownloadService.class);
+        } catch (IllegalStateException e) {
+            //the app is in the background, the service will be started by the scheduler instead
+            Log.w("MainActivity", "Failed to start download service", e);
         }
     }
 
@@ -105,8 +299,14 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
      */
     private void updateStartPosition() {
         if (player != null) {
+            if (player.getPlaybackState() == Player.STATE_ENDED) {
+                //finished, the next start begins from the top
+                clearStartPosition();
+                return;
+            }
             startAutoPlay = player.getPlayWhenReady();
-            startItemIndex = player.getCurrentMediaItemIndex();
+            startItemIndex =
+                    playlist != null ? playlist.getCurrentIndex() : player.getCurrentMediaItemIndex();
             startPosition = Math.max(0, player.getContentPosition());
         }
     }
@@ -128,6 +328,10 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
     public void onStart() {
         super.onStart();
         if (Util.SDK_INT > 23) {
+            //released in onStop, built again from the saved start position
+            if (player == null) {
+                initPlayerPart2();
+            }
             if (playerView != null) {
                 playerView.onResume();
             }
@@ -138,6 +342,9 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
     public void onResume() {
         super.onResume();
         if (Util.SDK_INT <= 23 || player == null) {
+            if (player == null) {
+                initPlayerPart2();
+            }
             if (playerView != null) {
                 playerView.onResume();
             }
@@ -193,13 +400,18 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
      */
     private void initPlayerPart1() {
         trackSelector = new DefaultTrackSelector(/* context= */ this);
+        //renditions this device dropped frames on in earlier sessions aren't tried again
+        applyMaxVideoHeight(renderCapStore.readMaxVideoHeight());
         lastSeenTracksInfo = TracksInfo.EMPTY;
 
+        bandwidthMeter = playbackResources.acquireBandwidthMeter();
         ExoPlayer player = new ExoPlayer.Builder(this)
                 .setTrackSelector(trackSelector)
+                .setLoadControl(playbackResources.createLoadControlBuilder().build())
+                .setBandwidthMeter(bandwidthMeter)
                 .build();
 
-        player.addListener(this);
+        player.addAnalyticsListener(createEventPipeline());
         StyledPlayerView playerView = findViewById(R.id.player_view);
         playerView.setPlayer(player);
 
@@ -227,38 +439,169 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
      */
     public void initPlayerPart2() {
         trackSelector = new DefaultTrackSelector(/* context= */ this);
+        trackSelector.setParameters(trackSelectionParameters);
+        //renditions this device dropped frames on in earlier sessions aren't tried again
+        applyMaxVideoHeight(renderCapStore.readMaxVideoHeight());
         lastSeenTracksInfo = TracksInfo.EMPTY;
 
-        player = new ExoPlayer.Builder(this)
+        //allocator and bandwidth estimate are shared with any other player on screen
+        MemoryAwareLoadControl.Builder loadControlBuilder = playbackResources.createLoadControlBuilder();
+        if (lowLatencyLive) {
+            //small buffers and speed control so the player can hold a few seconds behind the live edge
+            lowLatencyLiveConfig.configureLoadControl(loadControlBuilder);
+        }
+        loadControl = loadControlBuilder.build();
+        memoryGovernor.register(loadControl);
+        bandwidthMeter = playbackResources.acquireBandwidthMeter();
+        BandwidthMeter playerBandwidthMeter = bandwidthMeter;
+        if (fastSeek) {
+            //starts from the lowest rendition after every seek
+            fastSeekController = new FastSeekController(bandwidthMeter);
+            playerBandwidthMeter = fastSeekController.getBandwidthMeter();
+        }
+        ExoPlayer.Builder playerBuilder = new ExoPlayer.Builder(this)
                 .setTrackSelector(trackSelector)
-                .build();
+                .setLoadControl(loadControl)
+                .setBandwidthMeter(playerBandwidthMeter);
+        if (lowLatencyLive) {
+            playerBuilder.setLivePlaybackSpeedControl(lowLatencyLiveConfig.createLivePlaybackSpeedControl());
+        }
+        player = playerBuilder.build();
 
-        player.addListener(this);
-        StyledPlayerView playerView = findViewById(R.id.player_view);
+        player.addAnalyticsListener(createEventPipeline());
+        playerView = findViewById(R.id.player_view);
         playerView.setPlayer(player);
+        if (fastSeekController != null) {
+            fastSeekController.attach(
+                    player,
+                    playerView.findViewById(R.id.exo_progress),
+                    DownloadUtil.getPreloadDataSourceFactory(this));
+            fastSeekController.setCallback(this::updateSeekLatencyText);
+        }
+        if (!lowLatencyLive) {
+            //previews from the manifest's thumbnail tiles while the time bar is scrubbed
+            thumbnailPreview = new ThumbnailPreview(
+                    findViewById(R.id.thumbnail_view),
+                    DownloadUtil.getDataSourceFactory(this),
+                    thumbnailCache);
+            thumbnailPreview.attach(player, playerView.findViewById(R.id.exo_progress));
+        }
 
         //uses the drm callback custom class to do the same function as the previous but the benefit is
         //that each component is more customizable in the process of verifying the content
         DrmSessionManager drmSessionManager;
-        HttpDataSource.Factory licenseDataSourceFactory = new DefaultHttpDataSource.Factory();
+        HttpDataSource.Factory licenseDataSourceFactory = DownloadUtil.getLicenseDataSourceFactory();
         CustomMediaDrmCallback drmCallback =
                 new CustomMediaDrmCallback(licenseURI, licenseDataSourceFactory);
+        drmCallback.setTimeoutMetrics(DownloadUtil.getTimeoutMetrics());
+        //also covers the next item preloader, it acquires its sessions through this callback
+        drmCallback.setEventPipeline(eventPipeline);
+        //and the license requests of downloads made while this session plays
+        downloadTracker.setEventPipeline(eventPipeline);
+        //one session per key so the next playlist item's session can be acquired ahead of time
         drmSessionManager =
                 new DefaultDrmSessionManager.Builder()
                         .setUuidAndExoMediaDrmProvider(C.WIDEVINE_UUID, FrameworkMediaDrm.DEFAULT_PROVIDER)
+                        .setMultiSession(true)
                         .build(drmCallback);
 
 
-        DataSource.Factory dataSourceFactory = new DefaultDataSource.Factory(this);
-        MediaSource mediaSource =
+        //reads through the download cache so anything already downloaded is not fetched again
+        DataSource.Factory dataSourceFactory = DownloadUtil.getDataSourceFactory(this);
+        mediaSourceFactory =
                 new DashMediaSource.Factory(dataSourceFactory)
-                        .setDrmSessionManager(drmSessionManager) //deprecated, setDrmSessionManagerProvider is the new form, however, this works in this implementation just fine
-                        .createMediaSource(MediaItem.fromUri(videoURI));
+                        .setDrmSessionManager(drmSessionManager); //deprecated, setDrmSessionManagerProvider is the new form, however, this works in this implementation just fine
 
-        player.setMediaSource(mediaSource);
+        //only the current item and the next one get media sources, the rest stay urls
+        playlist = new LazyPlaylist(
+                player, playlistURIs.length, this::createMediaSource, LazyPlaylist.DEFAULT_LOOKAHEAD);
+        if (startItemIndex != C.INDEX_UNSET && !lowLatencyLive) {
+            playlist.seekTo(startItemIndex, startPosition);
+        } else {
+            playlist.seekTo(0, C.TIME_UNSET);
+        }
+        if (!lowLatencyLive) {
+            //fetches the next item's manifest, license and first segments before this one ends
+            nextItemPreloader = new NextItemPreloader(
+                    player,
+                    playlist,
+                    Arrays.asList(playlistURIs),
+                    DownloadUtil.getPreloadDataSourceFactory(this),
+                    drmSessionManager,
+                    bandwidthMeter);
+            nextItemPreloader.start();
+        }
         player.prepare();
-        player.play();
+        player.setPlayWhenReady(startAutoPlay);
         playerView.setControllerVisibilityListener(this);
+
+        if (lowLatencyLive) {
+            liveLatencyMonitor =
+                    new LiveLatencyMonitor(player, lowLatencyLiveConfig, liveLatencySampleIntervalMs);
+            liveLatencyMonitor.setCallback(this::updateLiveLatencyText);
+            liveLatencyMonitor.start();
+        }
+    }
+
+    /**
+     * creates the media source of a playlist item when it enters the playlist's window, downloaded
+     * items play from the download cache with their persistent license
+     * @param index playlist index of the item
+     * @return media source for the item
+     */
+    private MediaSource createMediaSource(int index) {
+        String uri = playlistURIs[index];
+        DownloadRequest downloadRequest =
+                lowLatencyLive ? null : downloadTracker.getDownloadRequest(Uri.parse(uri));
+        if (downloadRequest != null) {
+            //downloaded media plays with its persistent license, no license request is made
+            return downloadTracker.createMediaSource(downloadRequest);
+        }
+        return mediaSourceFactory.createMediaSource(createMediaItem(uri));
+    }
+
+    /**
+     * creates the media item for the player, in low latency mode this is the live stream with the
+     * target offset and speed range from the low latency config
+     * @param uri manifest url of the item
+     * @return media item to play
+     */
+    private MediaItem createMediaItem(String uri) {
+        if (!lowLatencyLive) {
+            return MediaItem.fromUri(uri);
+        }
+        return new MediaItem.Builder()
+                .setUri(uri)
+                .setLiveConfiguration(lowLatencyLiveConfig.toLiveConfiguration())
+                .build();
+    }
+
+    /**
+     * shows the latest latency to the live edge in the debug text view
+     * @param monitor monitor that took the sample
+     */
+    private void updateLiveLatencyText(LiveLatencyMonitor monitor) {
+        debugTextView.setText(String.format(
+                Locale.US,
+                "live offset %.2fs (avg %.2fs, target %.2fs) speed %.2fx",
+                monitor.getCurrentOffsetMs() / 1000f,
+                monitor.getAverageOffsetMs() / 1000f,
+                lowLatencyLiveConfig.targetOffsetMs / 1000f,
+                monitor.getPlaybackSpeed()));
+    }
+
+    /**
+     * shows how long the last seek took to show its first frame in the debug text view
+     * @param controller controller that measured the seek
+     * @param latencyMs latency of the last seek
+     */
+    private void updateSeekLatencyText(FastSeekController controller, long latencyMs) {
+        debugTextView.setText(String.format(
+                Locale.US,
+                "seek to first frame %dms (avg %dms over %d seeks)",
+                latencyMs,
+                controller.getAverageSeekLatencyMs(),
+                controller.getSeekCount()));
     }
 
     /**
@@ -267,6 +610,10 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
      */
     @Override
     public void onClick(View view) {
+        if (view == downloadButton) {
+            toggleDownload();
+            return;
+        }
         if (view == selectTracksButton
                 && !isShowingTrackSelectionDialog
                 && TrackSelectionDialog.willHaveContent(trackSelector)) {
@@ -280,11 +627,57 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
         }
     }
 
+    /**
+     * downloads the video with the currently selected quality, or removes it if it was already
+     * downloaded
+     */
+    private void toggleDownload() {
+        Uri uri = Uri.parse(videoURI);
+        if (downloadTracker.hasDownload(uri)) {
+            downloadTracker.removeDownload(uri);
+            showToast("Removing download");
+            return;
+        }
+        MediaItem mediaItem = new MediaItem.Builder()
+                .setUri(videoURI)
+                .setDrmConfiguration(
+                        new MediaItem.DrmConfiguration.Builder(C.WIDEVINE_UUID)
+                                .setLicenseUri(licenseURI)
+                                .build())
+                .build();
+        downloadTracker.startDownload(mediaItem, trackSelector.getParameters());
+        showToast("Starting download");
+    }
+
     /**
      * updates the track selector button
      */
     private void updateButtonVisibility() {
         selectTracksButton.setEnabled(true);
+        downloadButton.setEnabled(!lowLatencyLive);
+        updateDownloadButtonText();
+    }
+
+    /**
+     * shows whether the video can be downloaded, is downloading or can be removed
+     */
+    private void updateDownloadButtonText() {
+        Uri uri = Uri.parse(videoURI);
+        if (downloadTracker.isDownloaded(uri)) {
+            downloadButton.setText("Remove");
+        } else if (downloadTracker.hasDownload(uri)) {
+            downloadButton.setText("Downloading");
+        } else {
+            downloadButton.setText("Download");
+        }
+    }
+
+    /**
+     * updates the download button when a download changes
+     */
+    @Override
+    public void onDownloadsChanged() {
+        updateDownloadButtonText();
     }
 
     /**
@@ -295,14 +688,97 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
         Toast.makeText(getApplicationContext(), message, Toast.LENGTH_LONG).show();
     }
 
+    /**
+     * creates the pipeline the player's events go through, they are logged in debug builds,
+     * traced and measured for render performance on its worker thread and only the coalesced UI
+     * updates come back to the main thread. The session trace is written to the app's external files dir under traces
+     * when the player is released
+     * @return pipeline to add to the player as an analytics listener
+     */
+    private PlayerEventPipeline createEventPipeline() {
+        eventPipeline = new PlayerEventPipeline();
+        if (BuildConfig.DEBUG) {
+            eventPipeline.addSink(new PlayerEventPipeline.LogSink());
+        }
+        File filesDir = getExternalFilesDir(/* type= */ null);
+        eventPipeline.addSink(new TraceRecorder(
+                new File(filesDir != null ? filesDir : getFilesDir(), traceDirectoryName)));
+        renderMetrics = new RenderMetrics(trackSelector.getParameters().maxVideoHeight);
+        renderMetrics.setCapListener(this::onMaxVideoHeightCapped);
+        eventPipeline.addSink(renderMetrics);
+        eventPipeline.setUiListener(this::onPlayerUiUpdate);
+        return eventPipeline;
+    }
+
+    /**
+     * the device kept dropping frames at some height, remembers the cap for later sessions and
+     * applies it to the current one
+     * @param maxVideoHeight highest video height to select from now on
+     */
+    private void onMaxVideoHeightCapped(int maxVideoHeight) {
+        renderCapStore.writeMaxVideoHeight(maxVideoHeight);
+        if (player != null) {
+            applyMaxVideoHeight(maxVideoHeight);
+            showToast("Limiting video to " + maxVideoHeight + "p");
+        }
+    }
+
+    /**
+     * lowers the track selector's max video height, a higher cap than the current one is ignored
+     * @param maxVideoHeight highest video height to select
+     */
+    private void applyMaxVideoHeight(int maxVideoHeight) {
+        DefaultTrackSelector.Parameters parameters = trackSelector.getParameters();
+        if (maxVideoHeight < parameters.maxVideoHeight) {
+            trackSelector.setParameters(
+                    parameters.buildUpon().setMaxVideoSize(parameters.maxVideoWidth, maxVideoHeight));
+        }
+    }
+
+    /**
+     * applies the player changes the UI shows, called on the main thread at most once per batch of
+     * events
+     * @param changes PlayerEventPipeline.UI_* flags
+     */
+    private void onPlayerUiUpdate(int changes) {
+        if (player == null) {
+            return;
+        }
+        if ((changes & PlayerEventPipeline.UI_TRACKS) != 0) {
+            onTracksInfoChanged(player.getCurrentTracksInfo());
+        }
+        if ((changes & PlayerEventPipeline.UI_ERROR) != 0) {
+            onPlayerError(player.getPlayerError());
+        }
+        if ((changes & PlayerEventPipeline.UI_STATE) != 0) {
+            //the screen only stays on while something is actually playing
+            playerView.setKeepScreenOn(player.isPlaying());
+        }
+    }
+
+    /**
+     * rejoins the live edge after falling behind the live window, any other error is shown
+     * @param error the player's current error, null if it recovered in the meantime
+     */
+    private void onPlayerError(@Nullable PlaybackException error) {
+        if (error == null) {
+            return;
+        }
+        if (error.errorCode == PlaybackException.ERROR_CODE_BEHIND_LIVE_WINDOW) {
+            player.seekToDefaultPosition();
+            player.prepare();
+            return;
+        }
+        showToast("Playback failed: " + error.getErrorCodeName());
+    }
+
     /**
      * updates the track selection button visibility and checks to see if the track info is supported
      * then sets the last seen track info tot the current trackInfo
      * @param tracksInfo information regarding the current loaded track
      */
-    @Override
     @SuppressWarnings("ReferenceEquality")
-    public void onTracksInfoChanged(TracksInfo tracksInfo) {
+    private void onTracksInfoChanged(TracksInfo tracksInfo) {
         updateButtonVisibility();
         if (tracksInfo == lastSeenTracksInfo) {
             return;
@@ -323,9 +799,53 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
      */
     private void releasePlayer() {
         Assertions.checkNotNull(playerView).setPlayer(null);
+        playerView.setKeepScreenOn(false);
         if (player != null) {
+            //before the playlist goes, its index is the one that is saved
+            updateTrackSelectorParameters();
+            updateStartPosition();
+            saveResumeState();
+        }
+        if (liveLatencyMonitor != null) {
+            liveLatencyMonitor.stop();
+            liveLatencyMonitor = null;
+        }
+        if (fastSeekController != null) {
+            fastSeekController.release();
+            fastSeekController = null;
+        }
+        if (thumbnailPreview != null) {
+            thumbnailPreview.release();
+            thumbnailPreview = null;
+        }
+        if (nextItemPreloader != null) {
+            nextItemPreloader.release();
+            nextItemPreloader = null;
+        }
+        if (playlist != null) {
+            playlist.release();
+            playlist = null;
+        }
+        if (player != null) {
+            Log.d("MainActivity", "Connections: " + DownloadUtil.getConnectionMetrics());
+            Log.d("MainActivity", "Timeouts: " + DownloadUtil.getTimeoutMetrics());
+            //the pipeline stays attached, the player delivers the final decoder counters and its
+            //release while releasing and the pipeline releases itself after that
             player.release();
             player = null;
         }
+        if (eventPipeline != null) {
+            downloadTracker.setEventPipeline(null);
+            eventPipeline = null;
+            renderMetrics = null;
+        }
+        if (loadControl != null) {
+            memoryGovernor.unregister(loadControl);
+            loadControl = null;
+        }
+        if (bandwidthMeter != null) {
+            playbackResources.releaseBandwidthMeter(bandwidthMeter);
+            bandwidthMeter = null;
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,279 @@
+package com.example.exoplayer;
+
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.DefaultLoadControl;
+import com.google.android.exoplayer2.LoadControl;
+import com.google.android.exoplayer2.Renderer;
+import com.google.android.exoplayer2.source.TrackGroupArray;
+import com.google.android.exoplayer2.trackselection.ExoTrackSelection;
+import com.google.android.exoplayer2.upstream.Allocator;
+import com.google.android.exoplayer2.upstream.DefaultAllocator;
+
+/**
+ * A {@link DefaultLoadControl} whose forward buffer and allocator pool shrink with the stage of a
+ * {@link MemoryGovernor} and grow back when it relaxes.
+ *
+ * Data already buffered ahead is never thrown away, it is played out while loading stays paused
+ * until the buffer is below the reduced limit. Unused allocations are released from the pool.
+ *
+ * The back buffer is not scaled, the player reads its duration once when it is built.
+ */
+public final class MemoryAwareLoadControl implements LoadControl, MemoryGovernor.Trimmable {
+
+    /** Sets the target of an allocator several load controls share, from what each of them needs. */
+    public interface AllocatorBudget {
+        /**
+         * called whenever the scaled byte target of one of the load controls changes, the budget
+         * sets the shared allocator's target from those of all load controls
+         * @param loadControl load control whose target changed
+         * @param targetBufferBytes its byte target, 0 once it stopped using the allocator
+         */
+        void onTargetChanged(MemoryAwareLoadControl loadControl, int targetBufferBytes);
+
+        /** bytes all load controls sharing the allocator may hold together */
+        int getTargetBufferBytes();
+    }
+
+    /** Builder for {@link MemoryAwareLoadControl}. */
+    public static final class Builder {
+
+        private DefaultAllocator allocator;
+        @Nullable private AllocatorBudget allocatorBudget;
+        private int minBufferMs;
+        private int maxBufferMs;
+        private int bufferForPlaybackMs;
+        private int bufferForPlaybackAfterRebufferMs;
+        private int backBufferMs;
+        private int targetBufferBytes;
+        private boolean prioritizeTimeOverSizeThresholds;
+
+        public Builder() {
+            minBufferMs = DefaultLoadControl.DEFAULT_MIN_BUFFER_MS;
+            maxBufferMs = DefaultLoadControl.DEFAULT_MAX_BUFFER_MS;
+            bufferForPlaybackMs = DefaultLoadControl.DEFAULT_BUFFER_FOR_PLAYBACK_MS;
+            bufferForPlaybackAfterRebufferMs =
+                    DefaultLoadControl.DEFAULT_BUFFER_FOR_PLAYBACK_AFTER_REBUFFER_MS;
+            backBufferMs = DefaultLoadControl.DEFAULT_BACK_BUFFER_DURATION_MS;
+            targetBufferBytes = C.LENGTH_UNSET;
+            prioritizeTimeOverSizeThresholds =
+                    DefaultLoadControl.DEFAULT_PRIORITIZE_TIME_OVER_SIZE_THRESHOLDS;
+        }
+
+        /**
+         * sets the allocator, a new one is created if this isn't called
+         * @return this builder
+         */
+        public Builder setAllocator(DefaultAllocator allocator) {
+            this.allocator = allocator;
+            return this;
+        }
+
+        /**
+         * sets the budget of an allocator shared with other load controls, it decides the
+         * allocator's target instead of this load control
+         * @return this builder
+         */
+        public Builder setAllocatorBudget(AllocatorBudget allocatorBudget) {
+            this.allocatorBudget = allocatorBudget;
+            return this;
+        }
+
+        /**
+         * sets the buffer durations, see {@link DefaultLoadControl.Builder#setBufferDurationsMs}
+         * @return this builder
+         */
+        public Builder setBufferDurationsMs(
+                int minBufferMs,
+                int maxBufferMs,
+                int bufferForPlaybackMs,
+                int bufferForPlaybackAfterRebufferMs) {
+            this.minBufferMs = minBufferMs;
+            this.maxBufferMs = maxBufferMs;
+            this.bufferForPlaybackMs = bufferForPlaybackMs;
+            this.bufferForPlaybackAfterRebufferMs = bufferForPlaybackAfterRebufferMs;
+            return this;
+        }
+
+        public Builder setBackBufferMs(int backBufferMs) {
+            this.backBufferMs = backBufferMs;
+            return this;
+        }
+
+        /**
+         * sets the byte budget without memory pressure, by default it is worked out from the
+         * selected tracks like {@link DefaultLoadControl} does
+         * @return this builder
+         */
+        public Builder setTargetBufferBytes(int targetBufferBytes) {
+            this.targetBufferBytes = targetBufferBytes;
+            return this;
+        }
+
+        public Builder setPrioritizeTimeOverSizeThresholds(boolean prioritizeTimeOverSizeThresholds) {
+            this.prioritizeTimeOverSizeThresholds = prioritizeTimeOverSizeThresholds;
+            return this;
+        }
+
+        public MemoryAwareLoadControl build() {
+            if (allocator == null) {
+                allocator =
+                        new DefaultAllocator(/* trimOnReset= */ true, C.DEFAULT_BUFFER_SEGMENT_SIZE);
+            }
+            return new MemoryAwareLoadControl(this);
+        }
+    }
+
+    private final Delegate delegate;
+    private final DefaultAllocator allocator;
+    @Nullable private final AllocatorBudget allocatorBudget;
+    private final long maxBufferUs;
+    private final long minPlayableBufferUs;
+    private final int targetBufferBytesOverwrite;
+
+    private volatile int targetBufferBytes;
+    private volatile float scale;
+    private volatile boolean tracksSelected;
+
+    private MemoryAwareLoadControl(Builder builder) {
+        allocator = builder.allocator;
+        allocatorBudget = builder.allocatorBudget;
+        delegate = new Delegate(builder);
+        maxBufferUs = C.msToUs(builder.maxBufferMs);
+        //loading is never held back below what is needed to start playing, or we'd never start
+        minPlayableBufferUs =
+                C.msToUs(Math.max(builder.bufferForPlaybackMs, builder.bufferForPlaybackAfterRebufferMs));
+        targetBufferBytesOverwrite = builder.targetBufferBytes;
+        targetBufferBytes =
+                targetBufferBytesOverwrite != C.LENGTH_UNSET
+                        ? targetBufferBytesOverwrite
+                        : DefaultLoadControl.DEFAULT_MIN_BUFFER_SIZE;
+        scale = 1f;
+    }
+
+    /** how far ahead the player may buffer at the current stage */
+    public long getMaxBufferUs() {
+        return Math.max(minPlayableBufferUs, (long) (maxBufferUs * scale));
+    }
+
+    /**
+     * how many bytes the allocator may hold at the current stage, with an {@link AllocatorBudget}
+     * this is what the load control contributes to the shared target
+     */
+    public int getTargetBufferBytes() {
+        return (int) (targetBufferBytes * scale);
+    }
+
+    @Override
+    public void onMemoryStageChanged(int stage, float scale) {
+        this.scale = scale;
+        applyAllocatorTarget();
+    }
+
+    @Override
+    public void onPrepared() {
+        delegate.onPrepared();
+    }
+
+    @Override
+    public void onTracksSelected(
+            Renderer[] renderers, TrackGroupArray trackGroups, ExoTrackSelection[] trackSelections) {
+        delegate.onTracksSelected(renderers, trackGroups, trackSelections);
+        if (targetBufferBytesOverwrite == C.LENGTH_UNSET) {
+            targetBufferBytes = delegate.calculateTargetBufferBytes(renderers, trackSelections);
+        }
+        tracksSelected = true;
+        //the delegate just set the unscaled target
+        applyAllocatorTarget();
+    }
+
+    @Override
+    public void onStopped() {
+        tracksSelected = false;
+        delegate.onStopped();
+        applyAllocatorTarget();
+    }
+
+    @Override
+    public void onReleased() {
+        tracksSelected = false;
+        delegate.onReleased();
+        applyAllocatorTarget();
+    }
+
+    @Override
+    public Allocator getAllocator() {
+        return allocator;
+    }
+
+    @Override
+    public long getBackBufferDurationUs() {
+        return delegate.getBackBufferDurationUs();
+    }
+
+    @Override
+    public boolean retainBackBufferFromKeyframe() {
+        return delegate.retainBackBufferFromKeyframe();
+    }
+
+    @Override
+    public boolean shouldContinueLoading(
+            long playbackPositionUs, long bufferedDurationUs, float playbackSpeed) {
+        if (bufferedDurationUs >= minPlayableBufferUs
+                && (bufferedDurationUs >= getMaxBufferUs()
+                        || allocator.getTotalBytesAllocated() >= getAllocatorTargetBytes())) {
+            return false;
+        }
+        return delegate.shouldContinueLoading(playbackPositionUs, bufferedDurationUs, playbackSpeed);
+    }
+
+    @Override
+    public boolean shouldStartPlayback(
+            long bufferedDurationUs, float playbackSpeed, boolean rebuffering, long targetLiveOffsetUs) {
+        return delegate.shouldStartPlayback(
+                bufferedDurationUs, playbackSpeed, rebuffering, targetLiveOffsetUs);
+    }
+
+    /**
+     * a shared allocator counts the bytes of every load control using it, so those are compared to
+     * the shared target
+     */
+    private int getAllocatorTargetBytes() {
+        return allocatorBudget != null ? allocatorBudget.getTargetBufferBytes() : getTargetBufferBytes();
+    }
+
+    /**
+     * shrinks or grows the allocator pool, lowering the target releases the unused allocations
+     * above it straight away
+     */
+    private void applyAllocatorTarget() {
+        if (allocatorBudget != null) {
+            allocatorBudget.onTargetChanged(this, tracksSelected ? getTargetBufferBytes() : 0);
+        } else if (tracksSelected) {
+            allocator.setTargetBufferSize(getTargetBufferBytes());
+        }
+    }
+
+    /** the wrapped load control, subclassed to reach the byte target it works out for the tracks */
+    private static final class Delegate extends DefaultLoadControl {
+
+        Delegate(Builder builder) {
+            super(
+                    builder.allocator,
+                    builder.minBufferMs,
+                    builder.maxBufferMs,
+                    builder.bufferForPlaybackMs,
+                    builder.bufferForPlaybackAfterRebufferMs,
+                    builder.targetBufferBytes,
+                    builder.prioritizeTimeOverSizeThresholds,
+                    builder.backBufferMs,
+                    /* retainBackBufferFromKeyframe= */ false);
+        }
+
+        @Override
+        protected int calculateTargetBufferBytes(
+                Renderer[] renderers, ExoTrackSelection[] trackSelectionArray) {
+            return super.calculateTargetBufferBytes(renderers, trackSelectionArray);
+        }
+    }
+}
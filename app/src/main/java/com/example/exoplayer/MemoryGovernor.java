@@ -0,0 +1,135 @@
+package com.example.exoplayer;
+
+import android.content.ComponentCallbacks2;
+import android.content.res.Configuration;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Turns the trim memory callbacks of the OS into memory stages and tells the player's buffers
+ * and the in-memory caches how much of their normal size they are allowed to use.
+ *
+ * The OS never says when pressure is over, so after the last trim callback the governor steps
+ * back down one stage every {@link #RECOVERY_INTERVAL_MS} until it is back to normal.
+ */
+public final class MemoryGovernor implements ComponentCallbacks2 {
+
+    /** Something whose memory use follows the governor's stage. */
+    public interface Trimmable {
+
+        /**
+         * called on the main thread whenever the stage changes
+         * @param stage the new stage, one of the STAGE_* constants
+         * @param scale fraction of the normal size that may be kept, 1 when there is no pressure
+         */
+        void onMemoryStageChanged(int stage, float scale);
+    }
+
+    public static final int STAGE_NORMAL = 0;
+    public static final int STAGE_MODERATE = 1;
+    public static final int STAGE_LOW = 2;
+    public static final int STAGE_CRITICAL = 3;
+
+    /** time without a new trim callback after which the governor relaxes by one stage */
+    public static final long RECOVERY_INTERVAL_MS = 30_000;
+
+    private static final String TAG = "MemoryGovernor";
+    private static final float[] STAGE_SCALES = {1f, 0.5f, 0.25f, 0.1f};
+
+    private final CopyOnWriteArrayList<Trimmable> trimmables;
+    private final Handler handler;
+    private final Runnable recoveryRunnable;
+    private int stage;
+
+    public MemoryGovernor() {
+        trimmables = new CopyOnWriteArrayList<>();
+        handler = new Handler(Looper.getMainLooper());
+        recoveryRunnable = this::recoverOneStage;
+        stage = STAGE_NORMAL;
+    }
+
+    /**
+     * starts applying the current stage to the trimmable, it is told the current stage right away
+     * @param trimmable buffer or cache to govern
+     */
+    public void register(Trimmable trimmable) {
+        trimmables.add(trimmable);
+        trimmable.onMemoryStageChanged(stage, getScale(stage));
+    }
+
+    public void unregister(Trimmable trimmable) {
+        trimmables.remove(trimmable);
+    }
+
+    public int getStage() {
+        return stage;
+    }
+
+    /**
+     * returns the fraction of their normal size trimmables may use at a stage
+     * @param stage one of the STAGE_* constants
+     * @return scale between 0 and 1
+     */
+    public static float getScale(int stage) {
+        return STAGE_SCALES[stage];
+    }
+
+    /**
+     * maps a trim memory level to a stage, levels sent while the app is in the background count
+     * as more pressure than the ones sent while it is running
+     * @param level level passed to {@link #onTrimMemory(int)}
+     * @return one of the STAGE_* constants
+     */
+    public static int getStageForTrimLevel(int level) {
+        if (level >= TRIM_MEMORY_MODERATE || level == TRIM_MEMORY_RUNNING_CRITICAL) {
+            return STAGE_CRITICAL;
+        } else if (level >= TRIM_MEMORY_BACKGROUND || level == TRIM_MEMORY_RUNNING_LOW) {
+            return STAGE_LOW;
+        } else if (level >= TRIM_MEMORY_RUNNING_MODERATE) {
+            return STAGE_MODERATE;
+        }
+        return STAGE_NORMAL;
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        int newStage = getStageForTrimLevel(level);
+        //a milder callback doesn't mean the pressure is gone, only the recovery timer relaxes
+        setStage(Math.max(stage, newStage));
+    }
+
+    @Override
+    public void onLowMemory() {
+        setStage(STAGE_CRITICAL);
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+        //nothing to do
+    }
+
+    /** relaxes the stage by one step, called by the recovery timer */
+    void recoverOneStage() {
+        if (stage > STAGE_NORMAL) {
+            setStage(stage - 1);
+        }
+    }
+
+    private void setStage(int newStage) {
+        handler.removeCallbacks(recoveryRunnable);
+        if (newStage != STAGE_NORMAL) {
+            handler.postDelayed(recoveryRunnable, RECOVERY_INTERVAL_MS);
+        }
+        if (newStage == stage) {
+            return;
+        }
+        Log.d(TAG, "Memory stage " + stage + " -> " + newStage);
+        stage = newStage;
+        float scale = getScale(newStage);
+        for (Trimmable trimmable : trimmables) {
+            trimmable.onMemoryStageChanged(newStage, scale);
+        }
+    }
+}
@@ -0,0 +1,307 @@
+package com.example.exoplayer;
+
+import android.net.Uri;
+import android.os.Handler;
+import android.os.SystemClock;
+import android.util.Log;
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.ExoPlayer;
+import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.MediaItem;
+import com.google.android.exoplayer2.Player;
+import com.google.android.exoplayer2.drm.DrmSessionManager;
+import com.google.android.exoplayer2.source.dash.DashSegmentIndex;
+import com.google.android.exoplayer2.source.dash.DashUtil;
+import com.google.android.exoplayer2.source.dash.manifest.AdaptationSet;
+import com.google.android.exoplayer2.source.dash.manifest.DashManifest;
+import com.google.android.exoplayer2.source.dash.manifest.Period;
+import com.google.android.exoplayer2.source.dash.manifest.RangedUri;
+import com.google.android.exoplayer2.source.dash.manifest.Representation;
+import com.google.android.exoplayer2.upstream.BandwidthMeter;
+import com.google.android.exoplayer2.upstream.cache.Cache;
+import com.google.android.exoplayer2.upstream.cache.CacheDataSource;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Warms up the next playlist item a while before the current one ends, so the transition doesn't
+ * go through the cold path of manifest, license and first segments.
+ *
+ * When the current item has {@link #setLeadTimeMs(long) lead time} or less left, the next item's
+ * manifest is fetched, its DRM session is pre-acquired on the player's session manager (which
+ * keeps it alive until the player picks it up) and its first segments are written to the bounded
+ * preload cache that playback reads through, see {@link DownloadUtil#getPreloadCache}.
+ */
+public final class NextItemPreloader implements Player.Listener {
+
+    /** default time before the end of the current item at which the next one is preloaded */
+    public static final long DEFAULT_LEAD_TIME_MS = 15_000;
+
+    /** default amount of media at the start of the next item written to the preload cache */
+    public static final long DEFAULT_PRELOAD_DURATION_MS = 4_000;
+
+    private static final String TAG = "NextItemPreloader";
+    private static final long CHECK_INTERVAL_MS = 1_000;
+
+    //same fraction of the estimate the adaptive track selection starts with
+    private static final float BANDWIDTH_FRACTION = 0.7f;
+
+    private final ExoPlayer player;
+    private final LazyPlaylist playlist;
+    private final List<String> uris;
+    private final CacheDataSource.Factory preloadDataSourceFactory;
+    private final DrmSessionManager drmSessionManager;
+    private final BandwidthMeter bandwidthMeter;
+    private final Handler handler;
+    private final Handler playbackHandler;
+    private final Runnable checkRunnable;
+    private final ExecutorService executor;
+    private final SegmentCacheWriter segmentCacheWriter;
+
+    private long leadTimeMs;
+    private long preloadDurationMs;
+    private int preloadedIndex;
+    @Nullable private DrmSessionManager.DrmSessionReference drmSessionReference;
+    private volatile boolean started;
+
+    /**
+     * @param player player playing the playlist
+     * @param playlist playlist whose next item is preloaded
+     * @param uris manifest urls of the playlist items
+     * @param preloadDataSourceFactory writes to the preload cache
+     * @param drmSessionManager the session manager the player's media sources use
+     * @param bandwidthMeter the player's bandwidth meter, picks the rendition to preload
+     */
+    public NextItemPreloader(
+            ExoPlayer player,
+            LazyPlaylist playlist,
+            List<String> uris,
+            CacheDataSource.Factory preloadDataSourceFactory,
+            DrmSessionManager drmSessionManager,
+            BandwidthMeter bandwidthMeter) {
+        this.player = player;
+        this.playlist = playlist;
+        this.uris = uris;
+        this.preloadDataSourceFactory = preloadDataSourceFactory;
+        this.drmSessionManager = drmSessionManager;
+        this.bandwidthMeter = bandwidthMeter;
+        handler = new Handler(player.getApplicationLooper());
+        playbackHandler = new Handler(player.getPlaybackLooper());
+        checkRunnable = this::check;
+        executor = Executors.newSingleThreadExecutor();
+        segmentCacheWriter = new SegmentCacheWriter(preloadDataSourceFactory);
+        leadTimeMs = DEFAULT_LEAD_TIME_MS;
+        preloadDurationMs = DEFAULT_PRELOAD_DURATION_MS;
+        preloadedIndex = C.INDEX_UNSET;
+    }
+
+    /**
+     * sets how long before the end of the current item the next one is preloaded
+     * @param leadTimeMs lead time in milliseconds
+     */
+    public void setLeadTimeMs(long leadTimeMs) {
+        this.leadTimeMs = leadTimeMs;
+    }
+
+    /**
+     * sets how much media at the start of the next item is written to the preload cache
+     * @param preloadDurationMs duration in milliseconds
+     */
+    public void setPreloadDurationMs(long preloadDurationMs) {
+        this.preloadDurationMs = preloadDurationMs;
+    }
+
+    /** starts watching the player for the point to preload at */
+    public void start() {
+        if (started) {
+            return;
+        }
+        started = true;
+        player.addListener(this);
+        scheduleCheck();
+    }
+
+    /** stops preloading and gives back a pre-acquired DRM session, can't be started again */
+    public void release() {
+        if (started) {
+            started = false;
+            player.removeListener(this);
+            handler.removeCallbacks(checkRunnable);
+        }
+        segmentCacheWriter.cancel();
+        executor.shutdownNow();
+        releaseDrmSession();
+    }
+
+    @Override
+    public void onMediaItemTransition(@Nullable MediaItem mediaItem, int reason) {
+        //the player has acquired the session it needs by now, or the manager's keep alive holds it
+        releaseDrmSession();
+    }
+
+    @Override
+    public void onIsPlayingChanged(boolean isPlaying) {
+        scheduleCheck();
+    }
+
+    private void scheduleCheck() {
+        handler.removeCallbacks(checkRunnable);
+        if (started && player.isPlaying()) {
+            handler.postDelayed(checkRunnable, CHECK_INTERVAL_MS);
+        }
+    }
+
+    private void check() {
+        int nextIndex = playlist.getNextIndex();
+        long durationMs = player.getDuration();
+        if (nextIndex != C.INDEX_UNSET
+                && nextIndex != preloadedIndex
+                && !player.isCurrentMediaItemLive()
+                && durationMs != C.TIME_UNSET
+                && durationMs - player.getCurrentPosition() <= leadTimeMs) {
+            preloadedIndex = nextIndex;
+            String uri = uris.get(nextIndex);
+            long bitrateEstimate = bandwidthMeter.getBitrateEstimate();
+            executor.execute(() -> preload(uri, bitrateEstimate));
+        }
+        scheduleCheck();
+    }
+
+    /** runs on the executor, each stage is best effort and a failure only loses the head start */
+    private void preload(String uri, long bitrateEstimate) {
+        long startMs = SystemClock.elapsedRealtime();
+        CacheDataSource dataSource = preloadDataSourceFactory.createDataSource();
+        DashManifest manifest;
+        try {
+            manifest = DashUtil.loadManifest(dataSource, Uri.parse(uri));
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to preload manifest of " + uri, e);
+            return;
+        }
+        if (manifest.dynamic || manifest.getPeriodCount() == 0) {
+            //a live manifest is stale by the time it would be played
+            removeFromCache(uri);
+            return;
+        }
+        long manifestMs = SystemClock.elapsedRealtime();
+        Period period = manifest.getPeriod(0);
+
+        try {
+            Format format = DashUtil.loadFormatWithDrmInitData(dataSource, period);
+            if (format != null && format.drmInitData != null) {
+                playbackHandler.post(() -> acquireDrmSession(format));
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to load drm init data of " + uri, e);
+        }
+
+        long bytes = 0;
+        for (AdaptationSet adaptationSet : period.adaptationSets) {
+            if (adaptationSet.type != C.TRACK_TYPE_VIDEO && adaptationSet.type != C.TRACK_TYPE_AUDIO) {
+                continue;
+            }
+            Representation representation = selectRepresentation(adaptationSet, bitrateEstimate);
+            if (representation == null) {
+                continue;
+            }
+            try {
+                bytes += cacheStart(representation, manifest.getPeriodDurationUs(0));
+            } catch (IOException e) {
+                Log.w(TAG, "Failed to preload segments of " + uri, e);
+                return;
+            }
+            if (Thread.currentThread().isInterrupted()) {
+                return;
+            }
+        }
+        Log.d(TAG, "Preloaded " + uri + ", manifest in " + (manifestMs - startMs) + "ms, "
+                + bytes + " bytes in " + (SystemClock.elapsedRealtime() - startMs) + "ms");
+    }
+
+    /**
+     * picks the rendition the player is likely to start with, the highest one that fits the
+     * bandwidth estimate or the lowest if none does
+     */
+    @Nullable
+    private static Representation selectRepresentation(
+            AdaptationSet adaptationSet, long bitrateEstimate) {
+        long allowedBitrate = (long) (bitrateEstimate * BANDWIDTH_FRACTION);
+        Representation best = null;
+        Representation lowest = null;
+        for (Representation representation : adaptationSet.representations) {
+            int bitrate = representation.format.bitrate;
+            if (lowest == null || bitrate < lowest.format.bitrate) {
+                lowest = representation;
+            }
+            if (bitrate <= allowedBitrate && (best == null || bitrate > best.format.bitrate)) {
+                best = representation;
+            }
+        }
+        return best != null ? best : lowest;
+    }
+
+    /**
+     * writes the initialization data and the segments covering the first
+     * {@link #setPreloadDurationMs(long) preload duration} of the representation to the cache
+     * @return bytes written
+     */
+    private long cacheStart(Representation representation, long periodDurationUs)
+            throws IOException {
+        long bytes = 0;
+        RangedUri initializationUri = representation.getInitializationUri();
+        if (initializationUri != null) {
+            bytes += segmentCacheWriter.cache(representation, initializationUri);
+        }
+        DashSegmentIndex index = representation.getIndex();
+        if (index == null) {
+            //indexed by a sidx box, the index itself is what the player loads first
+            RangedUri indexUri = representation.getIndexUri();
+            if (indexUri != null) {
+                bytes += segmentCacheWriter.cache(representation, indexUri);
+            }
+            return bytes;
+        }
+        long preloadDurationUs = C.msToUs(preloadDurationMs);
+        long firstSegmentNum = index.getFirstSegmentNum();
+        long segmentCount = index.getSegmentCount(periodDurationUs);
+        for (long segmentNum = firstSegmentNum;
+                (segmentCount == C.LENGTH_UNSET || segmentNum < firstSegmentNum + segmentCount)
+                        && index.getTimeUs(segmentNum) < preloadDurationUs;
+                segmentNum++) {
+            bytes += segmentCacheWriter.cache(representation, index.getSegmentUrl(segmentNum));
+        }
+        return bytes;
+    }
+
+    private void removeFromCache(String uri) {
+        Cache cache = preloadDataSourceFactory.getCache();
+        if (cache != null) {
+            cache.removeResource(uri);
+        }
+    }
+
+    /** runs on the playback looper, the session manager's thread */
+    private void acquireDrmSession(Format format) {
+        if (!started || drmSessionReference != null) {
+            return;
+        }
+        drmSessionManager.prepare();
+        drmSessionReference =
+                drmSessionManager.preacquireSession(
+                        player.getPlaybackLooper(), /* eventDispatcher= */ null, format);
+    }
+
+    private void releaseDrmSession() {
+        playbackHandler.post(
+                () -> {
+                    if (drmSessionReference != null) {
+                        drmSessionReference.release();
+                        drmSessionReference = null;
+                        drmSessionManager.release();
+                    }
+                });
+    }
+}
@@ -0,0 +1,53 @@
+package com.example.exoplayer;
+
+import android.app.Notification;
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.offline.Download;
+import com.google.android.exoplayer2.offline.DownloadManager;
+import com.google.android.exoplayer2.offline.DownloadService;
+import com.google.android.exoplayer2.scheduler.PlatformScheduler;
+import com.google.android.exoplayer2.scheduler.Scheduler;
+import java.util.List;
+
+/**
+ * Foreground service running the downloads started through {@link DownloadTracker}.
+ *
+ * The platform scheduler restarts the service when the network comes back, so partially
+ * downloaded assets resume without the app being opened.
+ */
+public class OfflineDownloadService extends DownloadService {
+
+    private static final int FOREGROUND_NOTIFICATION_ID = 1;
+    private static final int JOB_ID = 1;
+
+    public OfflineDownloadService() {
+        super(
+                FOREGROUND_NOTIFICATION_ID,
+                DEFAULT_FOREGROUND_NOTIFICATION_UPDATE_INTERVAL,
+                DownloadUtil.DOWNLOAD_NOTIFICATION_CHANNEL_ID,
+                R.string.download_channel_name,
+                /* channelDescriptionResourceId= */ 0);
+    }
+
+    @Override
+    protected DownloadManager getDownloadManager() {
+        return DownloadUtil.getDownloadManager(/* context= */ this);
+    }
+
+    @Override
+    @Nullable
+    protected Scheduler getScheduler() {
+        return new PlatformScheduler(this, JOB_ID);
+    }
+
+    @Override
+    protected Notification getForegroundNotification(List<Download> downloads) {
+        return DownloadUtil.getDownloadNotificationHelper(/* context= */ this)
+                .buildProgressNotification(
+                        /* context= */ this,
+                        android.R.drawable.stat_sys_download,
+                        /* contentIntent= */ null,
+                        /* message= */ null,
+                        downloads);
+    }
+}
@@ -0,0 +1,127 @@
+package com.example.exoplayer;
+
+import android.util.Log;
+import android.util.Pair;
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.drm.DefaultDrmSessionManager;
+import com.google.android.exoplayer2.drm.DrmSession;
+import com.google.android.exoplayer2.drm.DrmSessionEventListener;
+import com.google.android.exoplayer2.drm.FrameworkMediaDrm;
+import com.google.android.exoplayer2.drm.OfflineLicenseHelper;
+import com.google.android.exoplayer2.upstream.HttpDataSource;
+
+/**
+ * Acquires, renews and releases persistent Widevine licenses for downloaded content.
+ *
+ * Key requests go through {@link CustomMediaDrmCallback} the same way they do for streaming.
+ * All methods block while talking to the license server, so call them off the main thread.
+ */
+public final class OfflineLicenseManager {
+
+    private static final String TAG = "OfflineLicenseManager";
+
+    /** licenses with less time left than this are renewed */
+    public static final long RENEWAL_THRESHOLD_SEC = 24 * 60 * 60;
+
+    private final CustomMediaDrmCallback drmCallback;
+    private final OfflineLicenseHelper offlineLicenseHelper;
+
+    /**
+     * @param licenseUrl license server url
+     * @param dataSourceFactory factory used for the license requests
+     */
+    public OfflineLicenseManager(String licenseUrl, HttpDataSource.Factory dataSourceFactory) {
+        drmCallback = new CustomMediaDrmCallback(licenseUrl, dataSourceFactory);
+        DefaultDrmSessionManager drmSessionManager =
+                new DefaultDrmSessionManager.Builder()
+                        .setUuidAndExoMediaDrmProvider(C.WIDEVINE_UUID, FrameworkMediaDrm.DEFAULT_PROVIDER)
+                        .build(drmCallback);
+        offlineLicenseHelper =
+                new OfflineLicenseHelper(drmSessionManager, new DrmSessionEventListener.EventDispatcher());
+    }
+
+    /**
+     * sets where finished license requests are reported, see
+     * {@link CustomMediaDrmCallback#setEventPipeline(PlayerEventPipeline)}
+     * @param eventPipeline pipeline of the playing session, null to stop reporting
+     */
+    public void setEventPipeline(@Nullable PlayerEventPipeline eventPipeline) {
+        drmCallback.setEventPipeline(eventPipeline);
+    }
+
+    /**
+     * downloads a persistent license for the given format
+     * @param format a format carrying the drm init data of the content
+     * @return the key set id to store with the download
+     * @throws DrmSession.DrmSessionException if the license could not be acquired
+     */
+    public byte[] downloadLicense(Format format) throws DrmSession.DrmSessionException {
+        return offlineLicenseHelper.downloadLicense(format);
+    }
+
+    /**
+     * returns the seconds left on a stored license, the smaller of the license and playback
+     * durations
+     * @param keySetId key set id of the stored license
+     * @return remaining seconds, 0 if the license is expired or can't be queried, {@link C#TIME_UNSET}
+     *     if the license states neither duration
+     */
+    public long getRemainingSec(byte[] keySetId) {
+        try {
+            Pair<Long, Long> remaining = offlineLicenseHelper.getLicenseDurationRemainingSec(keySetId);
+            return getRemainingSec(remaining.first, remaining.second);
+        } catch (DrmSession.DrmSessionException e) {
+            Log.w(TAG, "Failed to query license duration", e);
+            return 0;
+        }
+    }
+
+    /**
+     * renews the license if it is close to expiring. A license that states no duration is taken
+     * not to expire and is kept, renewing it would only repeat the license request on every start
+     * @param keySetId key set id of the stored license
+     * @return the key set id to keep using, a new one if the license was renewed
+     * @throws DrmSession.DrmSessionException if the renewal failed
+     */
+    public byte[] renewIfExpiring(byte[] keySetId) throws DrmSession.DrmSessionException {
+        long remainingSec = getRemainingSec(keySetId);
+        if (remainingSec == C.TIME_UNSET || remainingSec > RENEWAL_THRESHOLD_SEC) {
+            return keySetId;
+        }
+        Log.d(TAG, "Renewing offline license, " + remainingSec + "s left");
+        return offlineLicenseHelper.renewLicense(keySetId);
+    }
+
+    /**
+     * gives a stored license back to the license server
+     * @param keySetId key set id of the stored license
+     * @throws DrmSession.DrmSessionException if the release failed
+     */
+    public void releaseLicense(byte[] keySetId) throws DrmSession.DrmSessionException {
+        offlineLicenseHelper.releaseLicense(keySetId);
+    }
+
+    /** releases the helper, the manager can't be used afterwards */
+    public void release() {
+        offlineLicenseHelper.release();
+    }
+
+    /**
+     * the smaller of the two durations, a duration the license doesn't state is
+     * {@link C#TIME_UNSET} and left out
+     * @param licenseSec remaining license duration
+     * @param playbackSec remaining playback duration
+     * @return remaining seconds, {@link C#TIME_UNSET} if neither is known
+     */
+    static long getRemainingSec(long licenseSec, long playbackSec) {
+        if (licenseSec == C.TIME_UNSET) {
+            return playbackSec;
+        }
+        if (playbackSec == C.TIME_UNSET) {
+            return licenseSec;
+        }
+        return Math.min(licenseSec, playbackSec);
+    }
+}
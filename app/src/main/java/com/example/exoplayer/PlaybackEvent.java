@@ -0,0 +1,108 @@
+package com.example.exoplayer;
+
+import androidx.annotation.Nullable;
+
+/**
+ * One player, load or DRM event captured by {@link PlayerEventPipeline}.
+ *
+ * Events are small and immutable so capturing one on the player's thread is a single allocation.
+ * What {@link #value1}, {@link #value2} and {@link #text} hold depends on the type, see the
+ * TYPE_* constants.
+ */
+public final class PlaybackEvent {
+
+    /** playback state changed, value1 is the new {@link com.google.android.exoplayer2.Player.State} */
+    public static final int TYPE_STATE = 0;
+    /** playing started or stopped, value1 is 1 while playing */
+    public static final int TYPE_IS_PLAYING = 1;
+    /** position jumped, value1 is the discontinuity reason, value2 the old position in ms */
+    public static final int TYPE_DISCONTINUITY = 2;
+    /** a load finished, value1 is bytes loaded, value2 load duration in ms, text the uri */
+    public static final int TYPE_LOAD = 3;
+    /** a load failed, value1 is bytes loaded, text the uri */
+    public static final int TYPE_LOAD_ERROR = 4;
+    /** new bandwidth estimate, value1 is bits per second */
+    public static final int TYPE_BANDWIDTH = 5;
+    /** the rendition being loaded changed, value1 is its bitrate, value2 its height, text its id */
+    public static final int TYPE_FORMAT = 6;
+    /** video frames were dropped, value1 is the count, value2 the period they were counted in ms */
+    public static final int TYPE_DROPPED_FRAMES = 7;
+    /** a DRM session was acquired, value1 is its state */
+    public static final int TYPE_DRM_SESSION_ACQUIRED = 8;
+    /** DRM keys were loaded */
+    public static final int TYPE_DRM_KEYS_LOADED = 9;
+    /** DRM session manager failed, text is the error */
+    public static final int TYPE_DRM_ERROR = 10;
+    /** a DRM session was released */
+    public static final int TYPE_DRM_SESSION_RELEASED = 11;
+    /** the player failed, value1 is the error code, text the error */
+    public static final int TYPE_PLAYER_ERROR = 12;
+    /** the available or selected tracks changed */
+    public static final int TYPE_TRACKS = 13;
+    /**
+     * a license request finished, value1 is the response size in bytes or -1 if it failed, value2
+     * its duration in ms, text the license url
+     */
+    public static final int TYPE_DRM_KEY_REQUEST = 14;
+    /** a video decoder was initialized, value1 is how long that took in ms, text the decoder name */
+    public static final int TYPE_VIDEO_DECODER_INIT = 15;
+    /**
+     * video frames were rendered, value1 is the sum of how early they were processed in us, value2
+     * the number of frames
+     */
+    public static final int TYPE_VIDEO_FRAME_OFFSET = 16;
+    /** the decoder got a new rendition, value1 is its bitrate, value2 its height, text its id */
+    public static final int TYPE_VIDEO_INPUT_FORMAT = 17;
+    /**
+     * video decoder counters since the renderer was enabled, taken before each rendition change and
+     * when the renderer is disabled, value1 is rendered frames, value2 dropped frames
+     */
+    public static final int TYPE_VIDEO_FRAME_COUNTS = 18;
+    /**
+     * taken right after {@link #TYPE_VIDEO_FRAME_COUNTS}, value1 is the sum of how early frames
+     * were processed in us since the renderer was enabled, value2 the number of frames
+     */
+    public static final int TYPE_VIDEO_OFFSET_COUNTS = 19;
+    /** the player was released, the last event of a session */
+    public static final int TYPE_PLAYER_RELEASED = 20;
+
+    private static final String[] TYPE_NAMES = {
+            "state", "isPlaying", "discontinuity", "load", "loadError", "bandwidth", "format",
+            "droppedFrames", "drmSessionAcquired", "drmKeysLoaded", "drmError", "drmSessionReleased",
+            "playerError", "tracks", "drmKeyRequest", "videoDecoderInit", "videoFrameOffset",
+            "videoInputFormat", "videoFrameCounts", "videoOffsetCounts", "playerReleased"
+    };
+
+    public final int type;
+    /** {@link android.os.SystemClock#elapsedRealtime()} when the event happened */
+    public final long realtimeMs;
+    /** playback position when the event happened, C.TIME_UNSET for events not from the player */
+    public final long positionMs;
+    public final long value1;
+    public final long value2;
+    @Nullable public final String text;
+
+    public PlaybackEvent(
+            int type, long realtimeMs, long positionMs, long value1, long value2, @Nullable String text) {
+        this.type = type;
+        this.realtimeMs = realtimeMs;
+        this.positionMs = positionMs;
+        this.value1 = value1;
+        this.value2 = value2;
+        this.text = text;
+    }
+
+    /**
+     * @param type one of the TYPE_* constants
+     * @return short name of the type for logs and traces
+     */
+    public static String getTypeName(int type) {
+        return type >= 0 && type < TYPE_NAMES.length ? TYPE_NAMES[type] : "unknown";
+    }
+
+    @Override
+    public String toString() {
+        return getTypeName(type) + "@" + positionMs + "ms(" + value1 + ", " + value2
+                + (text != null ? ", " + text : "") + ")";
+    }
+}
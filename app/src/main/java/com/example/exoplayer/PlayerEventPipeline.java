@@ -0,0 +1,420 @@
+package com.example.exoplayer;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.PlaybackException;
+import com.google.android.exoplayer2.Player;
+import com.google.android.exoplayer2.TracksInfo;
+import com.google.android.exoplayer2.analytics.AnalyticsListener;
+import com.google.android.exoplayer2.decoder.DecoderCounters;
+import com.google.android.exoplayer2.decoder.DecoderReuseEvaluation;
+import com.google.android.exoplayer2.source.LoadEventInfo;
+import com.google.android.exoplayer2.source.MediaLoadData;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Moves the handling of player, load and DRM events off the threads that report them.
+ *
+ * The analytics callbacks only turn the event into a {@link PlaybackEvent} and offer it to an
+ * {@link EventRingBuffer}, nothing else runs on the player's thread. A worker thread drains the
+ * buffer in batches every {@link #BATCH_INTERVAL_MS} and hands each batch to the {@link Sink}s for
+ * logging and analytics. Events the UI cares about are folded into a set of change flags and at
+ * most one update per batch is posted to the main thread.
+ */
+public final class PlayerEventPipeline implements AnalyticsListener {
+
+    /** Receives batches of events on the worker thread. */
+    public interface Sink {
+        /**
+         * called on the worker thread, the list is reused after this returns
+         * @param events events in the order they happened
+         */
+        void onEvents(List<PlaybackEvent> events);
+
+        /** called on the worker thread after the last batch, when the pipeline is released */
+        default void onReleased() {}
+    }
+
+    /** Receives the coalesced UI updates. */
+    public interface UiListener {
+        /**
+         * called on the main thread with everything that changed since the last call
+         * @param changes UI_* flags
+         */
+        void onUiUpdate(int changes);
+    }
+
+    /** the tracks changed, buttons and track dialogs may need updating */
+    public static final int UI_TRACKS = 1;
+    /** the player failed */
+    public static final int UI_ERROR = 1 << 1;
+    /** the playback state or playing flag changed */
+    public static final int UI_STATE = 1 << 2;
+
+    /** how often the worker drains the buffer */
+    public static final long BATCH_INTERVAL_MS = 100;
+
+    private static final String TAG = "PlayerEventPipeline";
+    private static final int BUFFER_CAPACITY = 1024;
+    private static final int MAX_BATCH_SIZE = 256;
+
+    private final EventRingBuffer<PlaybackEvent> buffer;
+    private final CopyOnWriteArrayList<Sink> sinks;
+    private final HandlerThread workerThread;
+    private final Handler workerHandler;
+    private final Handler mainHandler;
+    private final Runnable drainRunnable;
+    private final Runnable uiRunnable;
+    private final AtomicInteger pendingUiChanges;
+    private final List<PlaybackEvent> batch;
+    @Nullable private volatile UiListener uiListener;
+    private volatile boolean released;
+    //counters of the enabled video renderer, only touched on the player's application thread
+    @Nullable private DecoderCounters videoDecoderCounters;
+
+    public PlayerEventPipeline() {
+        buffer = new EventRingBuffer<>(BUFFER_CAPACITY);
+        sinks = new CopyOnWriteArrayList<>();
+        workerThread = new HandlerThread("PlayerEventPipeline", Process.THREAD_PRIORITY_BACKGROUND);
+        workerThread.start();
+        workerHandler = new Handler(workerThread.getLooper());
+        mainHandler = new Handler(Looper.getMainLooper());
+        drainRunnable = this::drain;
+        uiRunnable = this::dispatchUiUpdate;
+        pendingUiChanges = new AtomicInteger();
+        batch = new ArrayList<>(MAX_BATCH_SIZE);
+        workerHandler.postDelayed(drainRunnable, BATCH_INTERVAL_MS);
+    }
+
+    public void addSink(Sink sink) {
+        sinks.add(sink);
+    }
+
+    public void removeSink(Sink sink) {
+        sinks.remove(sink);
+    }
+
+    public void setUiListener(@Nullable UiListener uiListener) {
+        this.uiListener = uiListener;
+    }
+
+    /**
+     * adds an event from outside the player, callable from any thread
+     * @param event event to add
+     */
+    public void post(PlaybackEvent event) {
+        buffer.offer(event);
+    }
+
+    /** number of events dropped because the worker fell behind */
+    public long getDroppedCount() {
+        return buffer.getDroppedCount();
+    }
+
+    /**
+     * drains what is left to the sinks and stops the worker. Called by itself once the player it
+     * listens to is released, so the events the player delivers while releasing still get through
+     */
+    public void release() {
+        if (released) {
+            return;
+        }
+        released = true;
+        mainHandler.removeCallbacks(uiRunnable);
+        workerHandler.removeCallbacks(drainRunnable);
+        workerHandler.post(() -> {
+            while (drainBatch() > 0) {
+                //flush everything captured before the release
+            }
+            for (Sink sink : sinks) {
+                try {
+                    sink.onReleased();
+                } catch (RuntimeException e) {
+                    Log.e(TAG, "Sink failed", e);
+                }
+            }
+            workerThread.quit();
+        });
+    }
+
+    @Override
+    public void onPlayerReleased(EventTime eventTime) {
+        //the last event the player delivers, after the renderers were disabled
+        capture(eventTime, PlaybackEvent.TYPE_PLAYER_RELEASED, 0, 0, null);
+        release();
+    }
+
+    @Override
+    public void onPlaybackStateChanged(EventTime eventTime, int state) {
+        capture(eventTime, PlaybackEvent.TYPE_STATE, state, 0, null);
+    }
+
+    @Override
+    public void onIsPlayingChanged(EventTime eventTime, boolean isPlaying) {
+        capture(eventTime, PlaybackEvent.TYPE_IS_PLAYING, isPlaying ? 1 : 0, 0, null);
+    }
+
+    @Override
+    public void onPositionDiscontinuity(
+            EventTime eventTime,
+            Player.PositionInfo oldPosition,
+            Player.PositionInfo newPosition,
+            int reason) {
+        capture(eventTime, PlaybackEvent.TYPE_DISCONTINUITY, reason, oldPosition.positionMs, null);
+    }
+
+    @Override
+    public void onLoadCompleted(
+            EventTime eventTime, LoadEventInfo loadEventInfo, MediaLoadData mediaLoadData) {
+        capture(
+                eventTime,
+                PlaybackEvent.TYPE_LOAD,
+                loadEventInfo.bytesLoaded,
+                loadEventInfo.loadDurationMs,
+                loadEventInfo.uri.toString());
+    }
+
+    @Override
+    public void onLoadError(
+            EventTime eventTime,
+            LoadEventInfo loadEventInfo,
+            MediaLoadData mediaLoadData,
+            IOException error,
+            boolean wasCanceled) {
+        capture(
+                eventTime,
+                PlaybackEvent.TYPE_LOAD_ERROR,
+                loadEventInfo.bytesLoaded,
+                wasCanceled ? 1 : 0,
+                loadEventInfo.uri.toString());
+    }
+
+    @Override
+    public void onBandwidthEstimate(
+            EventTime eventTime, int totalLoadTimeMs, long totalBytesLoaded, long bitrateEstimate) {
+        capture(eventTime, PlaybackEvent.TYPE_BANDWIDTH, bitrateEstimate, totalBytesLoaded, null);
+    }
+
+    @Override
+    public void onDownstreamFormatChanged(EventTime eventTime, MediaLoadData mediaLoadData) {
+        Format format = mediaLoadData.trackFormat;
+        if (format == null) {
+            return;
+        }
+        capture(eventTime, PlaybackEvent.TYPE_FORMAT, format.bitrate, format.height, format.id);
+    }
+
+    @Override
+    public void onDroppedVideoFrames(EventTime eventTime, int droppedFrames, long elapsedMs) {
+        capture(eventTime, PlaybackEvent.TYPE_DROPPED_FRAMES, droppedFrames, elapsedMs, null);
+    }
+
+    @Override
+    public void onVideoDecoderInitialized(
+            EventTime eventTime,
+            String decoderName,
+            long initializedTimestampMs,
+            long initializationDurationMs) {
+        capture(eventTime, PlaybackEvent.TYPE_VIDEO_DECODER_INIT, initializationDurationMs, 0, decoderName);
+    }
+
+    @Override
+    public void onVideoFrameProcessingOffset(
+            EventTime eventTime, long totalProcessingOffsetUs, int frameCount) {
+        capture(eventTime, PlaybackEvent.TYPE_VIDEO_FRAME_OFFSET, totalProcessingOffsetUs, frameCount, null);
+    }
+
+    @Override
+    public void onVideoEnabled(EventTime eventTime, DecoderCounters decoderCounters) {
+        videoDecoderCounters = decoderCounters;
+    }
+
+    @Override
+    public void onVideoInputFormatChanged(
+            EventTime eventTime,
+            Format format,
+            @Nullable DecoderReuseEvaluation decoderReuseEvaluation) {
+        //what was rendered so far belongs to the rendition before this one
+        if (videoDecoderCounters != null) {
+            captureCounters(eventTime, videoDecoderCounters);
+        }
+        capture(eventTime, PlaybackEvent.TYPE_VIDEO_INPUT_FORMAT, format.bitrate, format.height, format.id);
+    }
+
+    @Override
+    public void onVideoDisabled(EventTime eventTime, DecoderCounters decoderCounters) {
+        captureCounters(eventTime, decoderCounters);
+        videoDecoderCounters = null;
+    }
+
+    @Override
+    public void onDrmSessionAcquired(EventTime eventTime, int state) {
+        capture(eventTime, PlaybackEvent.TYPE_DRM_SESSION_ACQUIRED, state, 0, null);
+    }
+
+    @Override
+    public void onDrmKeysLoaded(EventTime eventTime) {
+        capture(eventTime, PlaybackEvent.TYPE_DRM_KEYS_LOADED, 0, 0, null);
+    }
+
+    @Override
+    public void onDrmSessionManagerError(EventTime eventTime, Exception error) {
+        capture(eventTime, PlaybackEvent.TYPE_DRM_ERROR, 0, 0, error.toString());
+    }
+
+    @Override
+    public void onDrmSessionReleased(EventTime eventTime) {
+        capture(eventTime, PlaybackEvent.TYPE_DRM_SESSION_RELEASED, 0, 0, null);
+    }
+
+    @Override
+    public void onPlayerError(EventTime eventTime, PlaybackException error) {
+        capture(
+                eventTime,
+                PlaybackEvent.TYPE_PLAYER_ERROR,
+                error.errorCode,
+                0,
+                error.getErrorCodeName() + ": " + error.getMessage());
+    }
+
+    @Override
+    public void onTracksInfoChanged(EventTime eventTime, TracksInfo tracksInfo) {
+        capture(eventTime, PlaybackEvent.TYPE_TRACKS, tracksInfo.getTrackGroupInfos().size(), 0, null);
+    }
+
+    private void captureCounters(EventTime eventTime, DecoderCounters counters) {
+        //the renderer updates them on the playback thread
+        counters.ensureUpdated();
+        capture(
+                eventTime,
+                PlaybackEvent.TYPE_VIDEO_FRAME_COUNTS,
+                counters.renderedOutputBufferCount,
+                counters.droppedBufferCount,
+                null);
+        capture(
+                eventTime,
+                PlaybackEvent.TYPE_VIDEO_OFFSET_COUNTS,
+                counters.totalVideoFrameProcessingOffsetUs,
+                counters.videoFrameProcessingOffsetCount,
+                null);
+    }
+
+    private void capture(EventTime eventTime, int type, long value1, long value2, @Nullable String text) {
+        if (released) {
+            return;
+        }
+        buffer.offer(new PlaybackEvent(
+                type, eventTime.realtimeMs, eventTime.currentPlaybackPositionMs, value1, value2, text));
+    }
+
+    /** runs on the worker thread */
+    private void drain() {
+        drainBatch();
+        if (!released) {
+            workerHandler.postDelayed(drainRunnable, BATCH_INTERVAL_MS);
+        }
+    }
+
+    private int drainBatch() {
+        batch.clear();
+        int count = buffer.drainTo(batch, MAX_BATCH_SIZE);
+        if (count == 0) {
+            return 0;
+        }
+        List<PlaybackEvent> events = Collections.unmodifiableList(batch);
+        for (Sink sink : sinks) {
+            try {
+                sink.onEvents(events);
+            } catch (RuntimeException e) {
+                //a broken sink must not stop the others or the worker
+                Log.e(TAG, "Sink failed", e);
+            }
+        }
+        postUiChanges(getUiChanges(batch));
+        return count;
+    }
+
+    private static int getUiChanges(List<PlaybackEvent> events) {
+        int changes = 0;
+        for (int i = 0; i < events.size(); i++) {
+            switch (events.get(i).type) {
+                case PlaybackEvent.TYPE_TRACKS:
+                    changes |= UI_TRACKS;
+                    break;
+                case PlaybackEvent.TYPE_PLAYER_ERROR:
+                    changes |= UI_ERROR;
+                    break;
+                case PlaybackEvent.TYPE_STATE:
+                case PlaybackEvent.TYPE_IS_PLAYING:
+                    changes |= UI_STATE;
+                    break;
+                default:
+                    break;
+            }
+        }
+        return changes;
+    }
+
+    /** merges the changes into the pending update, only the first change since the last update posts */
+    private void postUiChanges(int changes) {
+        if (changes == 0 || released) {
+            return;
+        }
+        int pending;
+        do {
+            pending = pendingUiChanges.get();
+        } while (!pendingUiChanges.compareAndSet(pending, pending | changes));
+        if (pending == 0) {
+            mainHandler.post(uiRunnable);
+        }
+    }
+
+    private void dispatchUiUpdate() {
+        int changes = pendingUiChanges.getAndSet(0);
+        UiListener listener = uiListener;
+        if (changes != 0 && listener != null && !released) {
+            listener.onUiUpdate(changes);
+        }
+    }
+
+    /**
+     * Logs state, error, DRM and rendition events, for following a session in logcat. Loads,
+     * bandwidth estimates and frame offsets come several times per segment and are left to the
+     * trace.
+     */
+    public static final class LogSink implements Sink {
+
+        private static final String TAG = "PlaybackEvents";
+
+        @Override
+        public void onEvents(List<PlaybackEvent> events) {
+            for (int i = 0; i < events.size(); i++) {
+                PlaybackEvent event = events.get(i);
+                if (isLogged(event.type)) {
+                    Log.d(TAG, event.toString());
+                }
+            }
+        }
+
+        private static boolean isLogged(int type) {
+            switch (type) {
+                case PlaybackEvent.TYPE_LOAD:
+                case PlaybackEvent.TYPE_BANDWIDTH:
+                case PlaybackEvent.TYPE_VIDEO_FRAME_OFFSET:
+                    return false;
+                default:
+                    return true;
+            }
+        }
+    }
+}
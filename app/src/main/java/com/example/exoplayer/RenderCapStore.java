@@ -0,0 +1,43 @@
+package com.example.exoplayer;
+
+import android.content.Context;
+import androidx.annotation.Nullable;
+import java.io.File;
+
+/**
+ * Remembers the highest video height this device renders without dropping frames, as found by
+ * {@link RenderMetrics}, so later sessions don't have to drop frames again to find out.
+ *
+ * Kept apart from the {@link ResumeStateStore} since it is about the device, not the content.
+ */
+public final class RenderCapStore {
+
+    private static final String FILE_NAME = "render_cap";
+    private static final int VERSION = 1;
+
+    private final VersionedFile file;
+
+    /**
+     * @param context any context
+     */
+    public RenderCapStore(Context context) {
+        file = new VersionedFile(new File(context.getFilesDir(), FILE_NAME), VERSION);
+    }
+
+    /**
+     * reads the stored cap
+     * @return the highest video height to select, Integer.MAX_VALUE if there is no cap
+     */
+    public int readMaxVideoHeight() {
+        @Nullable Integer maxVideoHeight = file.read(input -> input.readInt());
+        return maxVideoHeight != null ? maxVideoHeight : Integer.MAX_VALUE;
+    }
+
+    /**
+     * replaces the stored cap, a few bytes so it is fine to call on the main thread
+     * @param maxVideoHeight highest video height to select
+     */
+    public void writeMaxVideoHeight(int maxVideoHeight) {
+        file.write(output -> output.writeInt(maxVideoHeight));
+    }
+}
@@ -0,0 +1,282 @@
+package com.example.exoplayer;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.Format;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Render and decoder performance of a session, collected per video rendition from the
+ * {@link PlayerEventPipeline}.
+ *
+ * For each rendition the decoder was fed it counts rendered and dropped frames, the time it was
+ * playing and how early frames were processed ahead of their render time, the decoder init times
+ * are kept for the session. Everything runs on the pipeline's worker thread.
+ *
+ * Frame counts and offsets come from snapshots of the decoder counters taken at every rendition
+ * change, the difference to the previous snapshot is what the outgoing rendition rendered. The
+ * player only reports frame offsets when the renderer stops, so those reports can't be used.
+ *
+ * A rendition that keeps dropping frames is more than this device can decode in time. Once
+ * {@link #DEFAULT_MAX_DROP_EPISODES} reports at one height drop frames at
+ * {@link #EPISODE_DROPPED_FPS} or more, the {@link CapListener} is told to cap renditions below that
+ * height, on the main thread.
+ */
+public final class RenderMetrics implements PlayerEventPipeline.Sink {
+
+    /** Applies the rendition cap. */
+    public interface CapListener {
+        /**
+         * called on the main thread when the device can't keep up with a height
+         * @param maxVideoHeight highest video height that should still be selected
+         */
+        void onMaxVideoHeightCapped(int maxVideoHeight);
+    }
+
+    /** Aggregates of one rendition, a copy taken by {@link #getRenditionStats()}. */
+    public static final class RenditionStats {
+        @Nullable public String id;
+        public int bitrate = Format.NO_VALUE;
+        public int height = Format.NO_VALUE;
+        public long renderedFrames;
+        public long droppedFrames;
+        public long playingMs;
+        /** sum of how early rendered frames were processed in us, see {@link #frameOffsetCount} */
+        public long totalFrameOffsetUs;
+        public long frameOffsetCount;
+        /** dropped frame reports that counted as an episode */
+        public int dropEpisodes;
+
+        /** rendered frames per second of playing time, 0 if it wasn't played */
+        public float getDecodeRate() {
+            return playingMs > 0 ? renderedFrames * 1000f / playingMs : 0;
+        }
+
+        /** share of frames dropped, between 0 and 1 */
+        public float getDropRate() {
+            long frames = renderedFrames + droppedFrames;
+            return frames > 0 ? (float) droppedFrames / frames : 0;
+        }
+
+        /** average time frames were processed ahead of rendering in us, lower means closer to late */
+        public long getAverageFrameOffsetUs() {
+            return frameOffsetCount > 0 ? totalFrameOffsetUs / frameOffsetCount : 0;
+        }
+
+        private RenditionStats copy() {
+            RenditionStats copy = new RenditionStats();
+            copy.id = id;
+            copy.bitrate = bitrate;
+            copy.height = height;
+            copy.renderedFrames = renderedFrames;
+            copy.droppedFrames = droppedFrames;
+            copy.playingMs = playingMs;
+            copy.totalFrameOffsetUs = totalFrameOffsetUs;
+            copy.frameOffsetCount = frameOffsetCount;
+            copy.dropEpisodes = dropEpisodes;
+            return copy;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%s %dp %dkbps: %d rendered, %d dropped (%.1f%%), "
+                            + "%.1ffps, %.1fms ahead, %d episodes",
+                    id, height, bitrate / 1000, renderedFrames, droppedFrames, getDropRate() * 100,
+                    getDecodeRate(), getAverageFrameOffsetUs() / 1000f, dropEpisodes);
+        }
+    }
+
+    /** reports at one height that cap renditions below it */
+    public static final int DEFAULT_MAX_DROP_EPISODES = 3;
+    /** dropped frames per second over a report's period that make the report an episode */
+    public static final int EPISODE_DROPPED_FPS = 2;
+
+    private static final String TAG = "RenderMetrics";
+    //the player also reports the few frames dropped when it stops, those aren't an episode
+    private static final int MIN_EPISODE_DROPPED_FRAMES = 10;
+    //never cap below this, a device that can't play it is better off dropping frames
+    private static final int MIN_CAP_HEIGHT = 360;
+
+    private final Handler mainHandler;
+    private final Map<String, RenditionStats> renditions;
+    private final Map<Integer, Integer> dropEpisodesByHeight;
+    @Nullable private CapListener capListener;
+    @Nullable private RenditionStats current;
+    private boolean playing;
+    private long lastRealtimeMs;
+    //last counter snapshots, the counters start over when the video renderer is enabled again
+    private long lastRenderedFrames;
+    private long lastDroppedFrames;
+    private long lastTotalFrameOffsetUs;
+    private long lastFrameOffsetCount;
+    private int cappedHeight;
+    private int decoderInitCount;
+    private long totalDecoderInitMs;
+    private long maxDecoderInitMs;
+    @Nullable private String decoderName;
+
+    /**
+     * @param maxVideoHeight cap already in place, only heights up to it are capped further
+     */
+    public RenderMetrics(int maxVideoHeight) {
+        mainHandler = new Handler(Looper.getMainLooper());
+        renditions = new LinkedHashMap<>();
+        dropEpisodesByHeight = new HashMap<>();
+        cappedHeight = maxVideoHeight;
+    }
+
+    public synchronized void setCapListener(@Nullable CapListener capListener) {
+        this.capListener = capListener;
+    }
+
+    @Override
+    public synchronized void onEvents(List<PlaybackEvent> events) {
+        for (int i = 0; i < events.size(); i++) {
+            PlaybackEvent event = events.get(i);
+            accruePlayingTime(event.realtimeMs);
+            switch (event.type) {
+                case PlaybackEvent.TYPE_IS_PLAYING:
+                    playing = event.value1 != 0;
+                    break;
+                case PlaybackEvent.TYPE_VIDEO_INPUT_FORMAT:
+                    current = getRendition(event);
+                    break;
+                case PlaybackEvent.TYPE_VIDEO_FRAME_COUNTS:
+                    long renderedFrames = getCounterDelta(event.value1, lastRenderedFrames);
+                    long droppedFrames = getCounterDelta(event.value2, lastDroppedFrames);
+                    if (current != null) {
+                        current.renderedFrames += renderedFrames;
+                        current.droppedFrames += droppedFrames;
+                    }
+                    lastRenderedFrames = event.value1;
+                    lastDroppedFrames = event.value2;
+                    break;
+                case PlaybackEvent.TYPE_VIDEO_OFFSET_COUNTS:
+                    long frameOffsetCount = getCounterDelta(event.value2, lastFrameOffsetCount);
+                    //restarted together with the count
+                    long totalFrameOffsetUs =
+                            event.value2 < lastFrameOffsetCount
+                                    ? event.value1
+                                    : event.value1 - lastTotalFrameOffsetUs;
+                    if (current != null) {
+                        current.totalFrameOffsetUs += totalFrameOffsetUs;
+                        current.frameOffsetCount += frameOffsetCount;
+                    }
+                    lastTotalFrameOffsetUs = event.value1;
+                    lastFrameOffsetCount = event.value2;
+                    break;
+                case PlaybackEvent.TYPE_DROPPED_FRAMES:
+                    if (current != null) {
+                        onDroppedFrames(current, event.value1, event.value2);
+                    }
+                    break;
+                case PlaybackEvent.TYPE_VIDEO_DECODER_INIT:
+                    decoderInitCount++;
+                    totalDecoderInitMs += event.value1;
+                    maxDecoderInitMs = Math.max(maxDecoderInitMs, event.value1);
+                    decoderName = event.text;
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    @Override
+    public void onReleased() {
+        Log.d(TAG, toString());
+    }
+
+    /** copies of the aggregates, in the order the renditions were first played */
+    public synchronized List<RenditionStats> getRenditionStats() {
+        List<RenditionStats> stats = new ArrayList<>(renditions.size());
+        for (RenditionStats rendition : renditions.values()) {
+            stats.add(rendition.copy());
+        }
+        return stats;
+    }
+
+    /** average video decoder init time of the session in ms, 0 if none was initialized */
+    public synchronized long getAverageDecoderInitMs() {
+        return decoderInitCount > 0 ? totalDecoderInitMs / decoderInitCount : 0;
+    }
+
+    public synchronized long getMaxDecoderInitMs() {
+        return maxDecoderInitMs;
+    }
+
+    /** highest video height that may be selected, Integer.MAX_VALUE if nothing was capped */
+    public synchronized int getMaxVideoHeight() {
+        return cappedHeight;
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder builder = new StringBuilder()
+                .append(decoderName)
+                .append(": ").append(decoderInitCount).append(" inits, avg ")
+                .append(getAverageDecoderInitMs()).append("ms, max ")
+                .append(maxDecoderInitMs).append("ms");
+        for (RenditionStats rendition : renditions.values()) {
+            builder.append("\n  ").append(rendition);
+        }
+        return builder.toString();
+    }
+
+    private void accruePlayingTime(long realtimeMs) {
+        if (playing && current != null && lastRealtimeMs != 0) {
+            current.playingMs += Math.max(0, realtimeMs - lastRealtimeMs);
+        }
+        lastRealtimeMs = realtimeMs;
+    }
+
+    /** counts below the last snapshot are from counters that started over */
+    private static long getCounterDelta(long count, long lastCount) {
+        return count < lastCount ? count : count - lastCount;
+    }
+
+    private RenditionStats getRendition(PlaybackEvent event) {
+        String key = event.text != null ? event.text : event.value1 + "@" + event.value2;
+        RenditionStats rendition = renditions.get(key);
+        if (rendition == null) {
+            rendition = new RenditionStats();
+            rendition.id = event.text;
+            rendition.bitrate = (int) event.value1;
+            rendition.height = (int) event.value2;
+            renditions.put(key, rendition);
+        }
+        return rendition;
+    }
+
+    private void onDroppedFrames(RenditionStats rendition, long droppedFrames, long elapsedMs) {
+        if (droppedFrames < MIN_EPISODE_DROPPED_FRAMES
+                || droppedFrames * 1000 < EPISODE_DROPPED_FPS * Math.max(1, elapsedMs)) {
+            return;
+        }
+        rendition.dropEpisodes++;
+        int height = rendition.height;
+        if (height == Format.NO_VALUE) {
+            return;
+        }
+        Integer episodes = dropEpisodesByHeight.get(height);
+        episodes = episodes == null ? 1 : episodes + 1;
+        dropEpisodesByHeight.put(height, episodes);
+        if (episodes < DEFAULT_MAX_DROP_EPISODES || height <= MIN_CAP_HEIGHT || height > cappedHeight) {
+            return;
+        }
+        cappedHeight = height - 1;
+        Log.w(TAG, "Frames keep dropping at " + height + "p, capping below it");
+        CapListener listener = capListener;
+        if (listener != null) {
+            int cap = cappedHeight;
+            mainHandler.post(() -> listener.onMaxVideoHeightCapped(cap));
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.example.exoplayer;
+
+import androidx.annotation.Nullable;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.TimeUnit;
+import okhttp3.OkHttpClient;
+
+/**
+ * Connect, first byte and total deadlines for one kind of request.
+ *
+ * The first byte deadline is the socket read timeout, so it also fires when a response stops
+ * delivering bytes halfway through, which is what the segment stall watchdog relies on.
+ */
+public final class RequestDeadlines {
+
+    /** license and provisioning requests, small bodies that should come back quickly */
+    public static final RequestDeadlines DRM =
+            new RequestDeadlines(
+                    /* connectTimeoutMs= */ 4_000, /* firstByteTimeoutMs= */ 6_000, /* totalTimeoutMs= */ 10_000);
+
+    /**
+     * manifest and segment loads, no total deadline since a large segment on a slow link is fine
+     * as long as bytes keep coming
+     */
+    public static final RequestDeadlines MEDIA =
+            new RequestDeadlines(
+                    /* connectTimeoutMs= */ 5_000, /* firstByteTimeoutMs= */ 4_000, /* totalTimeoutMs= */ 0);
+
+    public final long connectTimeoutMs;
+    public final long firstByteTimeoutMs;
+    /** 0 for no total deadline */
+    public final long totalTimeoutMs;
+
+    public RequestDeadlines(long connectTimeoutMs, long firstByteTimeoutMs, long totalTimeoutMs) {
+        this.connectTimeoutMs = connectTimeoutMs;
+        this.firstByteTimeoutMs = firstByteTimeoutMs;
+        this.totalTimeoutMs = totalTimeoutMs;
+    }
+
+    /**
+     * returns a client with these deadlines that still shares the connection pool and dispatcher
+     * of the given client
+     * @param client client to derive from
+     * @return client with the deadlines applied
+     */
+    public OkHttpClient apply(OkHttpClient client) {
+        return client.newBuilder()
+                .connectTimeout(connectTimeoutMs, TimeUnit.MILLISECONDS)
+                .readTimeout(firstByteTimeoutMs, TimeUnit.MILLISECONDS)
+                .callTimeout(totalTimeoutMs, TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    //message OkHttp gives the InterruptedIOException it throws when the call timeout fires
+    private static final String CALL_TIMEOUT_MESSAGE = "timeout";
+
+    /**
+     * checks if an exception, or anything that caused it, is a missed deadline
+     *
+     * A plain InterruptedIOException is not, the loader interrupts its thread when a load is
+     * canceled on seek, track switch or release.
+     * @param e exception thrown by a data source
+     * @return true if a deadline was hit
+     */
+    public static boolean isTimeout(@Nullable Throwable e) {
+        while (e != null) {
+            if (e instanceof SocketTimeoutException) {
+                return true;
+            }
+            if (e instanceof InterruptedIOException && CALL_TIMEOUT_MESSAGE.equals(e.getMessage())) {
+                return true;
+            }
+            e = e.getCause();
+        }
+        return false;
+    }
+}
@@ -0,0 +1,127 @@
+package com.example.exoplayer;
+
+import android.content.Context;
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.Format;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Keeps where playback was left off in a small binary file, so a cold start after the process was
+ * killed resumes at the same item, position and quality instead of starting over and ramping up
+ * from the lowest rendition.
+ *
+ * The file is replaced atomically, a crash while writing leaves the previous state in place.
+ */
+public final class ResumeStateStore {
+
+    /** What is stored, unknown values are {@link C#INDEX_UNSET}, {@link C#TIME_UNSET} or null. */
+    public static final class State {
+        /** manifest url of the item, the index is only trusted if it still points to this url */
+        @Nullable public String manifestUri;
+        public int itemIndex = C.INDEX_UNSET;
+        public long positionMs = C.TIME_UNSET;
+        public boolean autoPlay = true;
+        /** last estimate of the shared bandwidth meter in bits per second, 0 if unknown */
+        public long bitrateEstimate;
+        /**
+         * bitrate of the rendition that was playing, {@link Format#NO_VALUE} if unknown. Only the
+         * bitrate is kept since it is all the start quality is picked by
+         */
+        public int videoBitrate = Format.NO_VALUE;
+        /** track selection limits and preferences, kept instead of the whole parameters bundle */
+        public int maxVideoWidth = Integer.MAX_VALUE;
+        public int maxVideoHeight = Integer.MAX_VALUE;
+        public int maxVideoBitrate = Integer.MAX_VALUE;
+        @Nullable public String preferredAudioLanguage;
+        @Nullable public String preferredTextLanguage;
+    }
+
+    private static final String FILE_NAME = "resume_state";
+    //2 dropped the size of the rendition that was playing
+    private static final int VERSION = 2;
+
+    private final VersionedFile file;
+
+    /**
+     * @param context any context
+     */
+    public ResumeStateStore(Context context) {
+        this(new File(context.getFilesDir(), FILE_NAME));
+    }
+
+    /**
+     * @param file file the state is kept in
+     */
+    ResumeStateStore(File file) {
+        this.file = new VersionedFile(file, VERSION);
+    }
+
+    /**
+     * reads the stored state
+     * @return the state, or null if nothing is stored or the file can't be read
+     */
+    @Nullable
+    public State read() {
+        return file.read(ResumeStateStore::readState);
+    }
+
+    /**
+     * replaces the stored state, this is a few dozen bytes so it is fine to call on the main thread
+     * @param state state to store
+     */
+    public void write(State state) {
+        file.write(output -> writeState(output, state));
+    }
+
+    /** forgets the stored state, the next start begins from the top */
+    public void clear() {
+        file.delete();
+    }
+
+    private static State readState(DataInputStream input) throws IOException {
+        State state = new State();
+        state.manifestUri = readNullableString(input);
+        state.itemIndex = input.readInt();
+        state.positionMs = input.readLong();
+        state.autoPlay = input.readBoolean();
+        state.bitrateEstimate = input.readLong();
+        state.videoBitrate = input.readInt();
+        state.maxVideoWidth = input.readInt();
+        state.maxVideoHeight = input.readInt();
+        state.maxVideoBitrate = input.readInt();
+        state.preferredAudioLanguage = readNullableString(input);
+        state.preferredTextLanguage = readNullableString(input);
+        return state;
+    }
+
+    private static void writeState(DataOutputStream output, State state) throws IOException {
+        writeNullableString(output, state.manifestUri);
+        output.writeInt(state.itemIndex);
+        output.writeLong(state.positionMs);
+        output.writeBoolean(state.autoPlay);
+        output.writeLong(state.bitrateEstimate);
+        output.writeInt(state.videoBitrate);
+        output.writeInt(state.maxVideoWidth);
+        output.writeInt(state.maxVideoHeight);
+        output.writeInt(state.maxVideoBitrate);
+        writeNullableString(output, state.preferredAudioLanguage);
+        writeNullableString(output, state.preferredTextLanguage);
+    }
+
+    @Nullable
+    private static String readNullableString(DataInputStream input) throws IOException {
+        return input.readBoolean() ? input.readUTF() : null;
+    }
+
+    private static void writeNullableString(DataOutputStream output, @Nullable String value)
+            throws IOException {
+        output.writeBoolean(value != null);
+        if (value != null) {
+            output.writeUTF(value);
+        }
+    }
+}
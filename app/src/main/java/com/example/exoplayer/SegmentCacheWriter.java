@@ -0,0 +1,69 @@
+package com.example.exoplayer;
+
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.source.dash.manifest.RangedUri;
+import com.google.android.exoplayer2.source.dash.manifest.Representation;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.cache.CacheDataSource;
+import com.google.android.exoplayer2.upstream.cache.CacheWriter;
+import java.io.IOException;
+
+/**
+ * Writes parts of a DASH representation (initialization data, segment indexes and segments) to a
+ * cache under the same keys the player's chunk source reads them with, so the player's request
+ * for them is a cache hit.
+ *
+ * Writes block, use one writer per background thread.
+ */
+public final class SegmentCacheWriter {
+
+    private final CacheDataSource.Factory cacheDataSourceFactory;
+    @Nullable private volatile CacheWriter cacheWriter;
+
+    /**
+     * @param cacheDataSourceFactory factory writing to the target cache
+     */
+    public SegmentCacheWriter(CacheDataSource.Factory cacheDataSourceFactory) {
+        this.cacheDataSourceFactory = cacheDataSourceFactory;
+    }
+
+    /**
+     * writes a part of the representation to the cache, parts already cached are not fetched
+     * again
+     * @param representation representation the part belongs to
+     * @param rangedUri the part, from the representation or its segment index
+     * @return bytes of the part now in the cache
+     * @throws IOException if the load failed or was cancelled
+     */
+    public long cache(Representation representation, RangedUri rangedUri) throws IOException {
+        DataSpec dataSpec =
+                new DataSpec.Builder()
+                        .setUri(rangedUri.resolveUri(representation.baseUrls.get(0).url))
+                        .setPosition(rangedUri.start)
+                        .setLength(rangedUri.length)
+                        .setKey(representation.getCacheKey())
+                        .build();
+        long[] bytesCached = new long[1];
+        CacheWriter writer =
+                new CacheWriter(
+                        cacheDataSourceFactory.createDataSource(),
+                        dataSpec,
+                        /* temporaryBuffer= */ null,
+                        (requestLength, cached, newBytesCached) -> bytesCached[0] = cached);
+        cacheWriter = writer;
+        try {
+            writer.cache();
+        } finally {
+            cacheWriter = null;
+        }
+        return bytesCached[0];
+    }
+
+    /** cancels the write in progress, it fails with an exception on its own thread */
+    public void cancel() {
+        CacheWriter writer = cacheWriter;
+        if (writer != null) {
+            writer.cancel();
+        }
+    }
+}
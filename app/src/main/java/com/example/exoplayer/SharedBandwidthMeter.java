@@ -0,0 +1,138 @@
+package com.example.exoplayer;
+
+import android.os.Handler;
+import com.google.android.exoplayer2.upstream.BandwidthMeter;
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.DefaultBandwidthMeter;
+import com.google.android.exoplayer2.upstream.TransferListener;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * One bandwidth estimate for every player on screen.
+ *
+ * All players report their transfers to the same {@link DefaultBandwidthMeter}, so overlapping
+ * loads are measured as the throughput of the link they share. Each player gets its own
+ * {@link BandwidthMeter} view that hands its adaptive track selection an equal share of that
+ * estimate, instead of every player assuming it has the whole link to itself and switching up
+ * until they starve each other.
+ *
+ * The link is only split between players that are loading, a player counts while it has a network
+ * transfer open. A paused player with a full buffer leaves the whole link to the others.
+ */
+public final class SharedBandwidthMeter {
+
+    private final DefaultBandwidthMeter bandwidthMeter;
+    private final AtomicInteger activePlayerCount;
+    private final AtomicInteger loadingPlayerCount;
+
+    /**
+     * @param bandwidthMeter the meter all players report their transfers to
+     */
+    public SharedBandwidthMeter(DefaultBandwidthMeter bandwidthMeter) {
+        this.bandwidthMeter = bandwidthMeter;
+        activePlayerCount = new AtomicInteger();
+        loadingPlayerCount = new AtomicInteger();
+    }
+
+    /**
+     * creates the bandwidth meter for a new player, the link is split with it whenever it loads
+     * until {@link #releasePlayerMeter(BandwidthMeter)} is called
+     * @return meter to pass to {@link com.google.android.exoplayer2.ExoPlayer.Builder#setBandwidthMeter}
+     */
+    public BandwidthMeter createPlayerMeter() {
+        activePlayerCount.incrementAndGet();
+        return new PlayerMeter();
+    }
+
+    /**
+     * gives the player's share of the link back to the other players
+     * @param playerMeter meter returned by {@link #createPlayerMeter()}
+     */
+    public void releasePlayerMeter(BandwidthMeter playerMeter) {
+        if (playerMeter instanceof PlayerMeter && ((PlayerMeter) playerMeter).release()) {
+            activePlayerCount.decrementAndGet();
+        }
+    }
+
+    /** number of players holding a meter */
+    public int getActivePlayerCount() {
+        return activePlayerCount.get();
+    }
+
+    /** number of players with a network transfer open */
+    public int getLoadingPlayerCount() {
+        return loadingPlayerCount.get();
+    }
+
+    /** estimated throughput of the whole link in bits per second */
+    public long getTotalBitrateEstimate() {
+        return bandwidthMeter.getBitrateEstimate();
+    }
+
+    private final class PlayerMeter implements BandwidthMeter, TransferListener {
+
+        private final AtomicInteger openTransferCount = new AtomicInteger();
+        private boolean released;
+
+        /**
+         * the player's share, it is asked before a load starts so the player counts itself as
+         * loading whether or not it already is
+         */
+        @Override
+        public long getBitrateEstimate() {
+            int otherLoadingPlayers = loadingPlayerCount.get() - (openTransferCount.get() > 0 ? 1 : 0);
+            return bandwidthMeter.getBitrateEstimate() / (1 + Math.max(0, otherLoadingPlayers));
+        }
+
+        @Override
+        public TransferListener getTransferListener() {
+            return this;
+        }
+
+        @Override
+        public void onTransferInitializing(DataSource source, DataSpec dataSpec, boolean isNetwork) {
+            bandwidthMeter.onTransferInitializing(source, dataSpec, isNetwork);
+        }
+
+        @Override
+        public void onTransferStart(DataSource source, DataSpec dataSpec, boolean isNetwork) {
+            if (isNetwork && openTransferCount.getAndIncrement() == 0) {
+                loadingPlayerCount.incrementAndGet();
+            }
+            bandwidthMeter.onTransferStart(source, dataSpec, isNetwork);
+        }
+
+        @Override
+        public void onBytesTransferred(
+                DataSource source, DataSpec dataSpec, boolean isNetwork, int bytesTransferred) {
+            bandwidthMeter.onBytesTransferred(source, dataSpec, isNetwork, bytesTransferred);
+        }
+
+        @Override
+        public void onTransferEnd(DataSource source, DataSpec dataSpec, boolean isNetwork) {
+            bandwidthMeter.onTransferEnd(source, dataSpec, isNetwork);
+            if (isNetwork && openTransferCount.decrementAndGet() == 0) {
+                loadingPlayerCount.decrementAndGet();
+            }
+        }
+
+        @Override
+        public void addEventListener(Handler eventHandler, EventListener eventListener) {
+            bandwidthMeter.addEventListener(eventHandler, eventListener);
+        }
+
+        @Override
+        public void removeEventListener(EventListener eventListener) {
+            bandwidthMeter.removeEventListener(eventListener);
+        }
+
+        private synchronized boolean release() {
+            if (released) {
+                return false;
+            }
+            released = true;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.exoplayer;
+
+import com.google.android.exoplayer2.upstream.DefaultAllocator;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Owns the target of the allocator all players share, so together they stay under one byte cap.
+ *
+ * Each load control that is using the allocator contributes its memory scaled target and the
+ * allocator's target is the average of them, so without memory pressure it is the full cap
+ * however many players there are. A player whose governor scaled it down lowers the shared target
+ * by its share only, and once the last player stops the pool is emptied.
+ */
+public final class SharedBufferBudget implements MemoryAwareLoadControl.AllocatorBudget {
+
+    private final DefaultAllocator allocator;
+    private final Map<MemoryAwareLoadControl, Integer> targets;
+    private int targetBufferBytes;
+
+    /**
+     * @param allocator the allocator shared by the players, its target is only set from here
+     */
+    public SharedBufferBudget(DefaultAllocator allocator) {
+        this.allocator = allocator;
+        targets = new HashMap<>();
+    }
+
+    @Override
+    public synchronized void onTargetChanged(MemoryAwareLoadControl loadControl, int targetBufferBytes) {
+        if (targetBufferBytes > 0) {
+            targets.put(loadControl, targetBufferBytes);
+        } else {
+            targets.remove(loadControl);
+        }
+        long total = 0;
+        for (int target : targets.values()) {
+            total += target;
+        }
+        this.targetBufferBytes = targets.isEmpty() ? 0 : (int) (total / targets.size());
+        //also undoes whatever a load control's DefaultLoadControl set when its tracks were selected
+        allocator.setTargetBufferSize(this.targetBufferBytes);
+    }
+
+    @Override
+    public synchronized int getTargetBufferBytes() {
+        return targetBufferBytes;
+    }
+
+    /** number of load controls currently using the allocator */
+    public synchronized int getLoadControlCount() {
+        return targets.size();
+    }
+}
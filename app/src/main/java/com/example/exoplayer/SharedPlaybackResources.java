@@ -0,0 +1,110 @@
+package com.example.exoplayer;
+
+import android.content.Context;
+import android.util.Log;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.upstream.BandwidthMeter;
+import com.google.android.exoplayer2.upstream.DefaultAllocator;
+import com.google.android.exoplayer2.upstream.DefaultBandwidthMeter;
+
+/**
+ * The allocator and bandwidth meter shared by every player in the app, so two players on one
+ * screen don't each hold a full buffer budget or fight over the link with separate estimates.
+ *
+ * Players are built with {@link #createLoadControlBuilder()} and {@link #acquireBandwidthMeter()}
+ * and hand the meter back through {@link #releaseBandwidthMeter(BandwidthMeter)} when released.
+ */
+public final class SharedPlaybackResources {
+
+    /** memory all players together may use for buffered media */
+    public static final int GLOBAL_BUFFER_BYTES = 64 * 1024 * 1024;
+
+    private static final String TAG = "SharedPlaybackResources";
+
+    private static SharedPlaybackResources instance;
+    private static long initialBitrateEstimate;
+
+    private final DefaultAllocator allocator;
+    private final SharedBufferBudget bufferBudget;
+    private final SharedBandwidthMeter bandwidthMeter;
+
+    /**
+     * returns the resources shared by the app's players
+     * @param context any context
+     * @return the shared resources
+     */
+    public static synchronized SharedPlaybackResources getInstance(Context context) {
+        if (instance == null) {
+            DefaultBandwidthMeter.Builder builder =
+                    new DefaultBandwidthMeter.Builder(context.getApplicationContext());
+            if (initialBitrateEstimate > 0) {
+                builder.setInitialBitrateEstimate(initialBitrateEstimate);
+            }
+            instance = new SharedPlaybackResources(builder.build());
+        }
+        return instance;
+    }
+
+    /**
+     * sets the estimate the shared bandwidth meter starts from instead of the network type
+     * default, only has an effect before the resources are first used
+     * @param bitrateEstimate estimate in bits per second, for example the one saved last session
+     */
+    public static synchronized void setInitialBitrateEstimate(long bitrateEstimate) {
+        if (instance != null) {
+            Log.w(TAG, "Bandwidth meter already created, ignoring initial estimate");
+            return;
+        }
+        initialBitrateEstimate = bitrateEstimate;
+    }
+
+    private SharedPlaybackResources(DefaultBandwidthMeter bandwidthMeter) {
+        //not trimmed when one player stops, the other players are still using it
+        allocator = new DefaultAllocator(/* trimOnReset= */ false, C.DEFAULT_BUFFER_SEGMENT_SIZE);
+        bufferBudget = new SharedBufferBudget(allocator);
+        this.bandwidthMeter = new SharedBandwidthMeter(bandwidthMeter);
+    }
+
+    /**
+     * builder for a load control that allocates from the shared allocator, the allocator's target
+     * is kept by the {@link SharedBufferBudget} so all players together stay under the global cap
+     * while each still has its own time based buffer limits
+     * @return load control builder using the shared allocator
+     */
+    public MemoryAwareLoadControl.Builder createLoadControlBuilder() {
+        return new MemoryAwareLoadControl.Builder()
+                .setAllocator(allocator)
+                .setAllocatorBudget(bufferBudget)
+                .setTargetBufferBytes(GLOBAL_BUFFER_BYTES);
+    }
+
+    /**
+     * returns a bandwidth meter for a new player, the estimate is split fairly between all
+     * players holding one
+     * @return meter for {@link com.google.android.exoplayer2.ExoPlayer.Builder#setBandwidthMeter}
+     */
+    public synchronized BandwidthMeter acquireBandwidthMeter() {
+        return bandwidthMeter.createPlayerMeter();
+    }
+
+    /**
+     * called when a player is released, the allocator's pool is emptied by the
+     * {@link SharedBufferBudget} once the last load control stopped
+     * @param playerMeter meter returned by {@link #acquireBandwidthMeter()}
+     */
+    public synchronized void releaseBandwidthMeter(BandwidthMeter playerMeter) {
+        bandwidthMeter.releasePlayerMeter(playerMeter);
+    }
+
+    public DefaultAllocator getAllocator() {
+        return allocator;
+    }
+
+    public SharedBufferBudget getBufferBudget() {
+        return bufferBudget;
+    }
+
+    public SharedBandwidthMeter getBandwidthMeter() {
+        return bandwidthMeter;
+    }
+}
@@ -0,0 +1,61 @@
+package com.example.exoplayer;
+
+import android.graphics.Bitmap;
+import android.util.LruCache;
+import androidx.annotation.Nullable;
+
+/**
+ * Decoded thumbnail tiles kept in memory, least recently used first out.
+ *
+ * The size limit is in bytes of bitmap memory and follows the {@link MemoryGovernor} stage, the
+ * cache is trimmed right away when the stage goes up.
+ */
+public final class ThumbnailCache implements MemoryGovernor.Trimmable {
+
+    /** default bitmap memory for tiles, a few hundred RGB_565 tiles of a typical 5x5 grid */
+    public static final int DEFAULT_MAX_BYTES = 16 * 1024 * 1024;
+
+    private final int maxBytes;
+    private final LruCache<String, Bitmap> cache;
+
+    /**
+     * @param maxBytes bitmap memory the cache may hold when there is no memory pressure
+     */
+    public ThumbnailCache(int maxBytes) {
+        this.maxBytes = maxBytes;
+        cache = new LruCache<String, Bitmap>(maxBytes) {
+            @Override
+            protected int sizeOf(String key, Bitmap value) {
+                return value.getByteCount();
+            }
+        };
+    }
+
+    /**
+     * @param key url of the tile
+     * @return the decoded tile, or null if it isn't cached
+     */
+    @Nullable
+    public Bitmap get(String key) {
+        return cache.get(key);
+    }
+
+    public void put(String key, Bitmap tile) {
+        cache.put(key, tile);
+    }
+
+    /** bitmap memory currently held */
+    public int getSizeBytes() {
+        return cache.size();
+    }
+
+    public void clear() {
+        cache.evictAll();
+    }
+
+    @Override
+    public void onMemoryStageChanged(int stage, float scale) {
+        //resizing evicts down to the new limit straight away
+        cache.resize(Math.max(1, (int) (maxBytes * scale)));
+    }
+}
@@ -0,0 +1,269 @@
+package com.example.exoplayer;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Matrix;
+import android.graphics.drawable.BitmapDrawable;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.view.View;
+import android.widget.ImageView;
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.Player;
+import com.google.android.exoplayer2.Timeline;
+import com.google.android.exoplayer2.source.dash.manifest.DashManifest;
+import com.google.android.exoplayer2.ui.TimeBar;
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.DataSourceInputStream;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.util.Assertions;
+import com.google.android.exoplayer2.util.Util;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Shows a thumbnail above the time bar while it is scrubbed.
+ *
+ * Tiles are fetched through the playback data source (so they come from the caches when they
+ * can) and decoded on background threads, a few tiles ahead of the scrub position in the
+ * direction it is moving. The main thread only ever looks tiles up in the {@link ThumbnailCache}
+ * and moves the image matrix to the right thumbnail, it never waits on a load or allocates a
+ * bitmap.
+ */
+public final class ThumbnailPreview implements Player.Listener, TimeBar.OnScrubListener {
+
+    /** tiles requested ahead of the scrub position */
+    public static final int PREFETCH_TILES = 2;
+
+    private static final String TAG = "ThumbnailPreview";
+    private static final int DECODE_THREADS = 2;
+
+    private final ImageView imageView;
+    private final DataSource.Factory dataSourceFactory;
+    private final ThumbnailCache cache;
+    private final ExecutorService executor;
+    private final Handler mainHandler;
+    private final Matrix matrix;
+    //only touched on the main thread
+    private final Set<String> pendingTiles;
+
+    @Nullable private Player player;
+    @Nullable private TimeBar timeBar;
+    @Nullable private ThumbnailTrack track;
+    @Nullable private Object manifest;
+    private boolean scrubbing;
+    private long scrubPositionMs;
+    private boolean released;
+
+    /**
+     * @param imageView view the thumbnail is shown in, it is shown and hidden as scrubbing starts
+     *     and stops and should use {@link ImageView.ScaleType#MATRIX}
+     * @param dataSourceFactory factory to load tiles with
+     * @param cache cache for decoded tiles
+     */
+    public ThumbnailPreview(
+            ImageView imageView, DataSource.Factory dataSourceFactory, ThumbnailCache cache) {
+        this.imageView = imageView;
+        this.dataSourceFactory = dataSourceFactory;
+        this.cache = cache;
+        executor = Executors.newFixedThreadPool(DECODE_THREADS);
+        mainHandler = new Handler(Looper.getMainLooper());
+        matrix = new Matrix();
+        pendingTiles = new HashSet<>();
+        imageView.setScaleType(ImageView.ScaleType.MATRIX);
+        imageView.setVisibility(View.GONE);
+    }
+
+    /**
+     * starts following the player's manifest and the time bar's scrubbing
+     * @param player player whose items get previews
+     * @param timeBar the player view's time bar
+     */
+    public void attach(Player player, TimeBar timeBar) {
+        this.player = player;
+        this.timeBar = timeBar;
+        player.addListener(this);
+        timeBar.addListener(this);
+    }
+
+    /** stops loading tiles and hides the preview, the cache is kept for the next player */
+    public void release() {
+        released = true;
+        if (player != null) {
+            player.removeListener(this);
+            player = null;
+        }
+        if (timeBar != null) {
+            timeBar.removeListener(this);
+            timeBar = null;
+        }
+        executor.shutdownNow();
+        mainHandler.removeCallbacksAndMessages(null);
+        imageView.setVisibility(View.GONE);
+        imageView.setImageBitmap(null);
+    }
+
+    @Override
+    public void onTimelineChanged(Timeline timeline, int reason) {
+        Object currentManifest = player != null ? player.getCurrentManifest() : null;
+        if (currentManifest == manifest) {
+            return;
+        }
+        manifest = currentManifest;
+        track = currentManifest instanceof DashManifest
+                ? ThumbnailTrack.fromManifest((DashManifest) currentManifest)
+                : null;
+        if (track != null && player != null) {
+            //the first scrub usually starts near where playback is
+            prefetch(track.getTileNum(player.getCurrentPosition()), /* direction= */ 1);
+        }
+    }
+
+    @Override
+    public void onScrubStart(TimeBar timeBar, long position) {
+        scrubbing = true;
+        scrubPositionMs = position;
+        if (track != null) {
+            imageView.setVisibility(View.VISIBLE);
+            show(position);
+        }
+    }
+
+    @Override
+    public void onScrubMove(TimeBar timeBar, long position) {
+        int direction = position >= scrubPositionMs ? 1 : -1;
+        scrubPositionMs = position;
+        if (track == null) {
+            return;
+        }
+        long tileNum = show(position);
+        prefetch(tileNum, direction);
+    }
+
+    @Override
+    public void onScrubStop(TimeBar timeBar, long position, boolean canceled) {
+        scrubbing = false;
+        imageView.setVisibility(View.GONE);
+    }
+
+    /**
+     * shows the thumbnail of the position if its tile is decoded, otherwise requests the tile and
+     * keeps showing the previous thumbnail
+     * @return tile of the position
+     */
+    private long show(long positionMs) {
+        ThumbnailTrack track = this.track;
+        long tileNum = track.getTileNum(positionMs);
+        if (tileNum == C.INDEX_UNSET) {
+            return tileNum;
+        }
+        moveAlongTimeBar(positionMs);
+        Bitmap tile = cache.get(track.getTileKey(tileNum));
+        if (tile == null) {
+            request(track.getTileDataSpec(tileNum));
+            return tileNum;
+        }
+        int thumbnailIndex = track.getThumbnailIndex(tileNum, positionMs);
+        float thumbnailWidth = (float) tile.getWidth() / track.columns;
+        float thumbnailHeight = (float) tile.getHeight() / track.rows;
+        float scale = Math.min(
+                imageView.getWidth() / thumbnailWidth, imageView.getHeight() / thumbnailHeight);
+        //the view clips to its bounds, so only the one thumbnail of the tile is visible
+        matrix.setTranslate(
+                -(thumbnailIndex % track.columns) * thumbnailWidth,
+                -(thumbnailIndex / track.columns) * thumbnailHeight);
+        matrix.postScale(scale, scale);
+        if (!isShowing(tile)) {
+            imageView.setImageBitmap(tile);
+        }
+        imageView.setImageMatrix(matrix);
+        imageView.invalidate();
+        return tileNum;
+    }
+
+    private boolean isShowing(Bitmap tile) {
+        return imageView.getDrawable() instanceof BitmapDrawable
+                && ((BitmapDrawable) imageView.getDrawable()).getBitmap() == tile;
+    }
+
+    /** keeps the preview centered over the scrub position, inside the time bar's bounds */
+    private void moveAlongTimeBar(long positionMs) {
+        if (!(timeBar instanceof View) || player == null) {
+            return;
+        }
+        long durationMs = player.getDuration();
+        if (durationMs == C.TIME_UNSET || durationMs <= 0) {
+            return;
+        }
+        View timeBarView = (View) timeBar;
+        float fraction = Math.min(1f, (float) positionMs / durationMs);
+        float x = timeBarView.getX() + fraction * timeBarView.getWidth() - imageView.getWidth() / 2f;
+        float maxX = timeBarView.getX() + timeBarView.getWidth() - imageView.getWidth();
+        imageView.setTranslationX(Math.max(timeBarView.getX(), Math.min(maxX, x)) - imageView.getLeft());
+    }
+
+    private void prefetch(long tileNum, int direction) {
+        ThumbnailTrack track = this.track;
+        if (track == null || tileNum == C.INDEX_UNSET) {
+            return;
+        }
+        for (int i = 0; i <= PREFETCH_TILES; i++) {
+            long prefetchTileNum = tileNum + (long) i * direction;
+            if (!track.hasTile(prefetchTileNum)) {
+                break;
+            }
+            if (cache.get(track.getTileKey(prefetchTileNum)) == null) {
+                request(track.getTileDataSpec(prefetchTileNum));
+            }
+        }
+    }
+
+    /**
+     * loads and decodes a tile in the background unless it is already on its way
+     * @param dataSpec data spec of the tile, its key is the tile's key in the cache
+     */
+    private void request(DataSpec dataSpec) {
+        String key = Assertions.checkNotNull(dataSpec.key);
+        if (released || !pendingTiles.add(key)) {
+            return;
+        }
+        executor.execute(() -> {
+            Bitmap tile = load(dataSpec);
+            mainHandler.post(() -> onTileLoaded(key, tile));
+        });
+    }
+
+    @Nullable
+    private Bitmap load(DataSpec dataSpec) {
+        DataSourceInputStream inputStream =
+                new DataSourceInputStream(dataSourceFactory.createDataSource(), dataSpec);
+        try {
+            byte[] data = Util.toByteArray(inputStream);
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            //thumbnails are small and opaque, half the memory of ARGB_8888
+            options.inPreferredConfig = Bitmap.Config.RGB_565;
+            return BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to load thumbnail tile " + dataSpec.key, e);
+            return null;
+        } finally {
+            Util.closeQuietly(inputStream);
+        }
+    }
+
+    private void onTileLoaded(String key, @Nullable Bitmap tile) {
+        pendingTiles.remove(key);
+        if (tile == null || released) {
+            return;
+        }
+        cache.put(key, tile);
+        if (scrubbing && track != null) {
+            show(scrubPositionMs);
+        }
+    }
+}
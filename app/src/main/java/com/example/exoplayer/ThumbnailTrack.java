@@ -0,0 +1,180 @@
+package com.example.exoplayer;
+
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.source.dash.DashSegmentIndex;
+import com.google.android.exoplayer2.source.dash.manifest.AdaptationSet;
+import com.google.android.exoplayer2.source.dash.manifest.DashManifest;
+import com.google.android.exoplayer2.source.dash.manifest.Descriptor;
+import com.google.android.exoplayer2.source.dash.manifest.Period;
+import com.google.android.exoplayer2.source.dash.manifest.RangedUri;
+import com.google.android.exoplayer2.source.dash.manifest.Representation;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import java.util.List;
+
+/**
+ * The thumbnail tiles of a DASH image adaptation set.
+ *
+ * Each segment of the set is one image holding a grid of thumbnails (DASH-IF thumbnail_tile),
+ * the thumbnails split the segment's duration evenly and run left to right, top to bottom.
+ */
+public final class ThumbnailTrack {
+
+    /** scheme of the essential property giving the grid of a tile, its value is "columnsxrows" */
+    public static final String TILE_SCHEME_ID_URI = "http://dashif.org/thumbnail_tile";
+
+    public final int columns;
+    public final int rows;
+    private final Representation representation;
+    private final DashSegmentIndex index;
+    private final long periodDurationUs;
+
+    private ThumbnailTrack(
+            Representation representation,
+            DashSegmentIndex index,
+            long periodDurationUs,
+            int columns,
+            int rows) {
+        this.representation = representation;
+        this.index = index;
+        this.periodDurationUs = periodDurationUs;
+        this.columns = columns;
+        this.rows = rows;
+    }
+
+    /**
+     * finds the thumbnail tiles of the first period, the smallest rendition is used since the
+     * preview is small anyway
+     * @param manifest manifest of the current item
+     * @return the thumbnail track, or null if the manifest has none
+     */
+    @Nullable
+    public static ThumbnailTrack fromManifest(DashManifest manifest) {
+        if (manifest.dynamic || manifest.getPeriodCount() == 0) {
+            return null;
+        }
+        Period period = manifest.getPeriod(0);
+        ThumbnailTrack best = null;
+        for (AdaptationSet adaptationSet : period.adaptationSets) {
+            for (Representation representation : adaptationSet.representations) {
+                String mimeType = representation.format.containerMimeType;
+                DashSegmentIndex index = representation.getIndex();
+                if (mimeType == null || !mimeType.startsWith("image/") || index == null) {
+                    continue;
+                }
+                int[] grid = parseGrid(representation.essentialProperties);
+                if (grid == null) {
+                    grid = parseGrid(adaptationSet.essentialProperties);
+                }
+                if (grid == null) {
+                    //an image set without a grid is one thumbnail per segment
+                    grid = new int[] {1, 1};
+                }
+                if (best == null
+                        || representation.format.bitrate < best.representation.format.bitrate) {
+                    best = new ThumbnailTrack(
+                            representation, index, manifest.getPeriodDurationUs(0), grid[0], grid[1]);
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * returns the tile holding the thumbnail of a position
+     * @param positionMs position in the item
+     * @return tile number, or {@link C#INDEX_UNSET} if the position is outside the track
+     */
+    public long getTileNum(long positionMs) {
+        long segmentCount = index.getSegmentCount(periodDurationUs);
+        if (segmentCount == 0 || positionMs < 0) {
+            return C.INDEX_UNSET;
+        }
+        long tileNum = index.getSegmentNum(C.msToUs(positionMs), periodDurationUs);
+        long firstTileNum = index.getFirstSegmentNum();
+        if (segmentCount != C.LENGTH_UNSET && tileNum >= firstTileNum + segmentCount) {
+            return C.INDEX_UNSET;
+        }
+        return Math.max(firstTileNum, tileNum);
+    }
+
+    /** returns whether the tile exists */
+    public boolean hasTile(long tileNum) {
+        long segmentCount = index.getSegmentCount(periodDurationUs);
+        long firstTileNum = index.getFirstSegmentNum();
+        return tileNum >= firstTileNum
+                && (segmentCount == C.LENGTH_UNSET || tileNum < firstTileNum + segmentCount);
+    }
+
+    /**
+     * returns where in its tile the thumbnail of a position is
+     * @param tileNum tile of the position, see {@link #getTileNum(long)}
+     * @param positionMs position in the item
+     * @return index of the thumbnail in the grid, left to right and top to bottom
+     */
+    public int getThumbnailIndex(long tileNum, long positionMs) {
+        long tileDurationUs = index.getDurationUs(tileNum, periodDurationUs);
+        if (tileDurationUs <= 0) {
+            return 0;
+        }
+        long offsetUs = C.msToUs(positionMs) - index.getTimeUs(tileNum);
+        int thumbnails = columns * rows;
+        int thumbnailIndex = (int) (offsetUs * thumbnails / tileDurationUs);
+        return Math.max(0, Math.min(thumbnails - 1, thumbnailIndex));
+    }
+
+    /**
+     * returns the key of a tile image in the caches, the url plus the byte range when the tiles
+     * are ranges of one sprite file
+     * @param tileNum tile number
+     * @return key of the image
+     */
+    public String getTileKey(long tileNum) {
+        RangedUri rangedUri = index.getSegmentUrl(tileNum);
+        return getKey(rangedUri, rangedUri.resolveUriString(representation.baseUrls.get(0).url));
+    }
+
+    /**
+     * returns what to load for a tile image, only its byte range if it is part of a sprite file
+     * @param tileNum tile number
+     * @return data spec of the image, keyed with {@link #getTileKey(long)}
+     */
+    public DataSpec getTileDataSpec(long tileNum) {
+        RangedUri rangedUri = index.getSegmentUrl(tileNum);
+        String uri = rangedUri.resolveUriString(representation.baseUrls.get(0).url);
+        return new DataSpec.Builder()
+                .setUri(uri)
+                .setPosition(rangedUri.start)
+                .setLength(rangedUri.length)
+                .setKey(getKey(rangedUri, uri))
+                .build();
+    }
+
+    private static String getKey(RangedUri rangedUri, String uri) {
+        if (rangedUri.start == 0 && rangedUri.length == C.LENGTH_UNSET) {
+            return uri;
+        }
+        return uri + "#" + rangedUri.start + "-" + rangedUri.length;
+    }
+
+    @Nullable
+    private static int[] parseGrid(List<Descriptor> descriptors) {
+        for (Descriptor descriptor : descriptors) {
+            if (!TILE_SCHEME_ID_URI.equals(descriptor.schemeIdUri) || descriptor.value == null) {
+                continue;
+            }
+            String[] parts = descriptor.value.split("x");
+            if (parts.length != 2) {
+                return null;
+            }
+            try {
+                int columns = Integer.parseInt(parts[0].trim());
+                int rows = Integer.parseInt(parts[1].trim());
+                return columns > 0 && rows > 0 ? new int[] {columns, rows} : null;
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,61 @@
+package com.example.exoplayer;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Counts the requests that missed their deadline and the loads that were moved to the
+ * alternate CDN because of it. Safe to update from any loading thread.
+ */
+public final class TimeoutMetrics {
+
+    private final AtomicInteger licenseTimeouts = new AtomicInteger();
+    private final AtomicInteger provisionTimeouts = new AtomicInteger();
+    private final AtomicInteger segmentStalls = new AtomicInteger();
+    private final AtomicInteger cdnFailovers = new AtomicInteger();
+
+    public void onLicenseTimeout() {
+        licenseTimeouts.incrementAndGet();
+    }
+
+    public void onProvisionTimeout() {
+        provisionTimeouts.incrementAndGet();
+    }
+
+    public void onSegmentStall() {
+        segmentStalls.incrementAndGet();
+    }
+
+    public void onCdnFailover() {
+        cdnFailovers.incrementAndGet();
+    }
+
+    public int getLicenseTimeoutCount() {
+        return licenseTimeouts.get();
+    }
+
+    public int getProvisionTimeoutCount() {
+        return provisionTimeouts.get();
+    }
+
+    /** number of media loads that timed out connecting, waiting for or in the middle of data */
+    public int getSegmentStallCount() {
+        return segmentStalls.get();
+    }
+
+    /** number of media loads that were re-issued to the alternate CDN */
+    public int getCdnFailoverCount() {
+        return cdnFailovers.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                Locale.US,
+                "license timeouts %d, provision timeouts %d, segment stalls %d, cdn failovers %d",
+                getLicenseTimeoutCount(),
+                getProvisionTimeoutCount(),
+                getSegmentStallCount(),
+                getCdnFailoverCount());
+    }
+}
@@ -0,0 +1,414 @@
+package com.example.exoplayer;
+
+import android.util.Log;
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.Player;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Records the timeline of one playback session for debugging rebuffers after the fact.
+ *
+ * Every event from the {@link PlayerEventPipeline} is packed into a fixed size binary record in a
+ * ring that keeps the most recent {@link #DEFAULT_MAX_EVENTS}, uris and other text go into a
+ * bounded table of interned strings the records point into. So a long session never holds more
+ * than a few hundred kilobytes however many segments it loads.
+ *
+ * The timeline is exported as Chrome trace JSON, which chrome://tracing and ui.perfetto.dev open
+ * directly. States are spans on a player track, loads and license requests are async spans,
+ * bandwidth, rendition bitrate and dropped frames are counters.
+ */
+public final class TraceRecorder implements PlayerEventPipeline.Sink {
+
+    /** events kept per session, older ones are overwritten */
+    public static final int DEFAULT_MAX_EVENTS = 8192;
+    /** trace files kept in the export directory, the oldest are deleted */
+    public static final int MAX_TRACE_FILES = 5;
+
+    private static final String TAG = "TraceRecorder";
+    //type, string, realtime, position, value1, value2
+    private static final int RECORD_BYTES = 4 + 4 + 8 + 8 + 8 + 8;
+    //power of two so string ids map to slots with a mask
+    private static final int MAX_STRINGS = 512;
+    private static final int MAX_STRING_LENGTH = 256;
+
+    private static final int PID = 1;
+    private static final int TID_PLAYER = 1;
+    private static final int TID_LOADS = 2;
+    private static final int TID_DRM = 3;
+
+    @Nullable private final File exportDirectory;
+    private final int maxEvents;
+    private final ByteBuffer records;
+    private final String[] strings;
+    private final Map<String, Integer> stringIds;
+    private long recordCount;
+    private int nextStringId;
+
+    /**
+     * @param exportDirectory where the trace is written when the pipeline is released, null to only
+     *     export on request
+     */
+    public TraceRecorder(@Nullable File exportDirectory) {
+        this(exportDirectory, DEFAULT_MAX_EVENTS);
+    }
+
+    /**
+     * @param exportDirectory where the trace is written when the pipeline is released, null to only
+     *     export on request
+     * @param maxEvents number of most recent events kept
+     */
+    public TraceRecorder(@Nullable File exportDirectory, int maxEvents) {
+        this.exportDirectory = exportDirectory;
+        this.maxEvents = maxEvents;
+        records = ByteBuffer.allocate(maxEvents * RECORD_BYTES);
+        strings = new String[MAX_STRINGS];
+        stringIds = new HashMap<>();
+    }
+
+    @Override
+    public synchronized void onEvents(List<PlaybackEvent> events) {
+        for (int i = 0; i < events.size(); i++) {
+            PlaybackEvent event = events.get(i);
+            int offset = (int) (recordCount % maxEvents) * RECORD_BYTES;
+            records.putInt(offset, event.type);
+            records.putInt(offset + 4, event.text != null ? intern(event.text) : C.INDEX_UNSET);
+            records.putLong(offset + 8, event.realtimeMs);
+            records.putLong(offset + 16, event.positionMs);
+            records.putLong(offset + 24, event.value1);
+            records.putLong(offset + 32, event.value2);
+            recordCount++;
+        }
+    }
+
+    @Override
+    public void onReleased() {
+        if (exportDirectory == null) {
+            return;
+        }
+        if (!exportDirectory.isDirectory() && !exportDirectory.mkdirs()) {
+            Log.w(TAG, "Can't create " + exportDirectory);
+            return;
+        }
+        deleteOldTraces(exportDirectory);
+        File file = new File(exportDirectory, "session-" + System.currentTimeMillis() + ".json");
+        try {
+            exportChromeTrace(file);
+            Log.i(TAG, "Trace of " + getEventCount() + " events written to " + file);
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to write " + file, e);
+        }
+    }
+
+    /** number of events currently held */
+    public synchronized int getEventCount() {
+        return (int) Math.min(recordCount, maxEvents);
+    }
+
+    /** number of events overwritten because the session ran past the bound */
+    public synchronized long getOverwrittenCount() {
+        return Math.max(0, recordCount - maxEvents);
+    }
+
+    /**
+     * writes the held timeline as Chrome trace JSON
+     * @param file file to write, replaced if it exists
+     * @throws IOException if writing fails
+     */
+    public void exportChromeTrace(File file) throws IOException {
+        try (Writer writer =
+                new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"))) {
+            exportChromeTrace(writer);
+        }
+    }
+
+    /**
+     * writes the held timeline as Chrome trace JSON, timestamps are relative to the oldest event
+     * @param writer where the JSON goes, not closed
+     * @throws IOException if writing fails
+     */
+    public synchronized void exportChromeTrace(Writer writer) throws IOException {
+        int count = getEventCount();
+        long first = recordCount - count;
+        long startMs = count > 0 ? records.getLong(offset(first) + 8) : 0;
+        TraceWriter trace = new TraceWriter(writer);
+        trace.begin(getOverwrittenCount());
+        trace.threadName(TID_PLAYER, "player");
+        trace.threadName(TID_LOADS, "loads");
+        trace.threadName(TID_DRM, "drm");
+
+        int state = C.INDEX_UNSET;
+        long stateStartUs = 0;
+        long droppedFrames = 0;
+        long lastUs = 0;
+        for (long sequence = first; sequence < recordCount; sequence++) {
+            int offset = offset(sequence);
+            int type = records.getInt(offset);
+            @Nullable String text = lookup(records.getInt(offset + 4));
+            long timeUs = (records.getLong(offset + 8) - startMs) * 1000;
+            long positionMs = records.getLong(offset + 16);
+            long value1 = records.getLong(offset + 24);
+            long value2 = records.getLong(offset + 32);
+            lastUs = timeUs;
+            switch (type) {
+                case PlaybackEvent.TYPE_STATE:
+                    if (state != C.INDEX_UNSET) {
+                        trace.complete(TID_PLAYER, getStateName(state), stateStartUs, timeUs - stateStartUs);
+                    }
+                    state = (int) value1;
+                    stateStartUs = timeUs;
+                    break;
+                case PlaybackEvent.TYPE_LOAD:
+                case PlaybackEvent.TYPE_DRM_KEY_REQUEST:
+                    //reported when they finish, the span reaches back by their duration
+                    trace.async(
+                            type == PlaybackEvent.TYPE_LOAD ? TID_LOADS : TID_DRM,
+                            PlaybackEvent.getTypeName(type),
+                            sequence,
+                            timeUs - value2 * 1000,
+                            timeUs,
+                            "bytes", value1,
+                            "uri", text);
+                    break;
+                case PlaybackEvent.TYPE_BANDWIDTH:
+                    trace.counter("bandwidth", timeUs, "bps", value1);
+                    break;
+                case PlaybackEvent.TYPE_FORMAT:
+                    trace.instant(TID_LOADS, "format " + (text != null ? text : ""), timeUs, false,
+                            "bitrate", value1, "height", value2, positionMs);
+                    trace.counter("format " + (value2 > 0 ? "video" : "audio"), timeUs, "bitrate", value1);
+                    break;
+                case PlaybackEvent.TYPE_DROPPED_FRAMES:
+                    droppedFrames += value1;
+                    trace.counter("dropped frames", timeUs, "total", droppedFrames);
+                    break;
+                case PlaybackEvent.TYPE_LOAD_ERROR:
+                case PlaybackEvent.TYPE_DRM_ERROR:
+                case PlaybackEvent.TYPE_PLAYER_ERROR:
+                    trace.instant(
+                            type == PlaybackEvent.TYPE_LOAD_ERROR ? TID_LOADS : TID_PLAYER,
+                            PlaybackEvent.getTypeName(type) + (text != null ? " " + text : ""),
+                            timeUs, true, "value1", value1, "value2", value2, positionMs);
+                    break;
+                default:
+                    trace.instant(
+                            type >= PlaybackEvent.TYPE_DRM_SESSION_ACQUIRED
+                                    && type <= PlaybackEvent.TYPE_DRM_SESSION_RELEASED
+                                    ? TID_DRM : TID_PLAYER,
+                            PlaybackEvent.getTypeName(type),
+                            timeUs, false, "value1", value1, "value2", value2, positionMs);
+                    break;
+            }
+        }
+        if (state != C.INDEX_UNSET) {
+            //the state the session ended in runs to the last event
+            trace.complete(TID_PLAYER, getStateName(state), stateStartUs, lastUs - stateStartUs);
+        }
+        trace.end();
+    }
+
+    private int offset(long sequence) {
+        return (int) (sequence % maxEvents) * RECORD_BYTES;
+    }
+
+    /**
+     * ids older than half the table are re-interned, so a string still in use isn't the next one
+     * evicted
+     */
+    private int intern(String text) {
+        if (text.length() > MAX_STRING_LENGTH) {
+            text = text.substring(0, MAX_STRING_LENGTH);
+        }
+        Integer existing = stringIds.get(text);
+        if (existing != null && nextStringId - existing < MAX_STRINGS / 2) {
+            return existing;
+        }
+        int id = nextStringId++;
+        int slot = id & (MAX_STRINGS - 1);
+        String evicted = strings[slot];
+        if (evicted != null) {
+            Integer evictedId = stringIds.get(evicted);
+            //unless it was re-interned since, then the newer slot owns the mapping
+            if (evictedId != null && evictedId == id - MAX_STRINGS) {
+                stringIds.remove(evicted);
+            }
+        }
+        strings[slot] = text;
+        stringIds.put(text, id);
+        return id;
+    }
+
+    @Nullable
+    private String lookup(int id) {
+        if (id < 0 || nextStringId - id > MAX_STRINGS) {
+            //the string was evicted with the events that used it
+            return null;
+        }
+        return strings[id & (MAX_STRINGS - 1)];
+    }
+
+    private static String getStateName(int state) {
+        switch (state) {
+            case Player.STATE_IDLE:
+                return "IDLE";
+            case Player.STATE_BUFFERING:
+                return "BUFFERING";
+            case Player.STATE_READY:
+                return "READY";
+            case Player.STATE_ENDED:
+                return "ENDED";
+            default:
+                return "STATE_" + state;
+        }
+    }
+
+    private static void deleteOldTraces(File directory) {
+        File[] files = directory.listFiles((dir, name) -> name.startsWith("session-"));
+        if (files == null || files.length < MAX_TRACE_FILES) {
+            return;
+        }
+        //names carry the time they were written
+        Arrays.sort(files);
+        for (int i = 0; i <= files.length - MAX_TRACE_FILES; i++) {
+            if (!files[i].delete()) {
+                Log.w(TAG, "Can't delete " + files[i]);
+            }
+        }
+    }
+
+    /** Writes the events of the Chrome trace event format one by one. */
+    private static final class TraceWriter {
+
+        private final Writer writer;
+        private boolean firstEvent;
+
+        TraceWriter(Writer writer) {
+            this.writer = writer;
+            firstEvent = true;
+        }
+
+        void begin(long overwrittenCount) throws IOException {
+            writer.write("{\"displayTimeUnit\":\"ms\",\"otherData\":{\"overwrittenEvents\":");
+            writer.write(Long.toString(overwrittenCount));
+            writer.write("},\"traceEvents\":[");
+        }
+
+        void end() throws IOException {
+            writer.write("\n]}\n");
+        }
+
+        void threadName(int tid, String name) throws IOException {
+            startEvent("thread_name", "M", tid, 0);
+            writer.write(",\"args\":{\"name\":");
+            string(name);
+            writer.write("}}");
+        }
+
+        void complete(int tid, String name, long timeUs, long durationUs) throws IOException {
+            startEvent(name, "X", tid, timeUs);
+            writer.write(",\"dur\":");
+            writer.write(Long.toString(durationUs));
+            writer.write('}');
+        }
+
+        /** loads overlap without nesting, which complete events can't show on one track */
+        void async(
+                int tid,
+                String name,
+                long id,
+                long startUs,
+                long endUs,
+                String numberName,
+                long number,
+                String textName,
+                @Nullable String text)
+                throws IOException {
+            startEvent(name, "b", tid, startUs);
+            writer.write(",\"cat\":\"" + name + "\",\"id\":" + id + ",\"args\":{");
+            arg(numberName, number);
+            writer.write(',');
+            string(textName);
+            writer.write(':');
+            string(text);
+            writer.write("}}");
+            startEvent(name, "e", tid, endUs);
+            writer.write(",\"cat\":\"" + name + "\",\"id\":" + id + '}');
+        }
+
+        void counter(String name, long timeUs, String series, long value) throws IOException {
+            startEvent(name, "C", TID_PLAYER, timeUs);
+            writer.write(",\"args\":{");
+            arg(series, value);
+            writer.write("}}");
+        }
+
+        void instant(
+                int tid,
+                String name,
+                long timeUs,
+                boolean global,
+                String name1,
+                long value1,
+                String name2,
+                long value2,
+                long positionMs)
+                throws IOException {
+            startEvent(name, "i", tid, timeUs);
+            writer.write(global ? ",\"s\":\"g\"" : ",\"s\":\"t\"");
+            writer.write(",\"args\":{");
+            arg(name1, value1);
+            writer.write(',');
+            arg(name2, value2);
+            if (positionMs != C.TIME_UNSET) {
+                writer.write(',');
+                arg("positionMs", positionMs);
+            }
+            writer.write("}}");
+        }
+
+        private void startEvent(String name, String phase, int tid, long timeUs) throws IOException {
+            writer.write(firstEvent ? "\n{" : ",\n{");
+            firstEvent = false;
+            writer.write("\"name\":");
+            string(name);
+            writer.write(",\"ph\":\"" + phase + "\",\"pid\":" + PID + ",\"tid\":" + tid
+                    + ",\"ts\":" + timeUs);
+        }
+
+        private void arg(String name, long value) throws IOException {
+            string(name);
+            writer.write(':');
+            writer.write(Long.toString(value));
+        }
+
+        private void string(@Nullable String value) throws IOException {
+            if (value == null) {
+                writer.write("null");
+                return;
+            }
+            writer.write('"');
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c == '"' || c == '\\') {
+                    writer.write('\\');
+                    writer.write(c);
+                } else if (c < 0x20) {
+                    writer.write(String.format("\\u%04x", (int) c));
+                } else {
+                    writer.write(c);
+                }
+            }
+            writer.write('"');
+        }
+    }
+}
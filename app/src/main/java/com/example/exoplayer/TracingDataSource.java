@@ -0,0 +1,90 @@
+package com.example.exoplayer;
+
+import android.net.Uri;
+import android.os.Trace;
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.TransferListener;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Wraps every media load in a systrace section, from open to close, so loads line up with the
+ * decoder and render work when the app is traced with systrace or Perfetto.
+ *
+ * Open and close are always called on the same loader thread, which is what {@link Trace} needs
+ * to pair the sections up.
+ */
+public final class TracingDataSource implements DataSource {
+
+    /** Creates {@link TracingDataSource} instances around another factory's data sources. */
+    public static final class Factory implements DataSource.Factory {
+
+        private final DataSource.Factory upstreamFactory;
+
+        public Factory(DataSource.Factory upstreamFactory) {
+            this.upstreamFactory = upstreamFactory;
+        }
+
+        @Override
+        public TracingDataSource createDataSource() {
+            return new TracingDataSource(upstreamFactory.createDataSource());
+        }
+    }
+
+    //section names longer than this make Trace throw
+    private static final int MAX_SECTION_NAME_LENGTH = 127;
+
+    private final DataSource upstream;
+    private boolean sectionOpen;
+
+    private TracingDataSource(DataSource upstream) {
+        this.upstream = upstream;
+    }
+
+    @Override
+    public void addTransferListener(TransferListener transferListener) {
+        upstream.addTransferListener(transferListener);
+    }
+
+    @Override
+    public long open(DataSpec dataSpec) throws IOException {
+        String name = "load " + dataSpec.uri.getLastPathSegment();
+        if (name.length() > MAX_SECTION_NAME_LENGTH) {
+            name = name.substring(0, MAX_SECTION_NAME_LENGTH);
+        }
+        Trace.beginSection(name);
+        sectionOpen = true;
+        return upstream.open(dataSpec);
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        return upstream.read(buffer, offset, length);
+    }
+
+    @Nullable
+    @Override
+    public Uri getUri() {
+        return upstream.getUri();
+    }
+
+    @Override
+    public Map<String, List<String>> getResponseHeaders() {
+        return upstream.getResponseHeaders();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            upstream.close();
+        } finally {
+            if (sectionOpen) {
+                sectionOpen = false;
+                Trace.endSection();
+            }
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.exoplayer;
+
+import android.util.Log;
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.util.AtomicFile;
+import com.google.android.exoplayer2.util.Util;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+
+/**
+ * A small binary file that starts with the version of its layout and is replaced atomically, a
+ * crash while writing leaves the previous content in place.
+ *
+ * A file written with another version reads as if there was none, so a store changing its layout
+ * only bumps its version instead of migrating old files.
+ */
+public final class VersionedFile {
+
+    /** Reads the content after the version. */
+    public interface Reader<T> {
+        T read(DataInputStream input) throws IOException;
+    }
+
+    /** Writes the content after the version. */
+    public interface Writer {
+        void write(DataOutputStream output) throws IOException;
+    }
+
+    private static final String TAG = "VersionedFile";
+
+    private final AtomicFile file;
+    private final String name;
+    private final int version;
+
+    /**
+     * @param file where the content is kept
+     * @param version version of the layout the reader and writer use
+     */
+    public VersionedFile(File file, int version) {
+        this.file = new AtomicFile(file);
+        this.version = version;
+        name = file.getName();
+    }
+
+    /**
+     * @param reader reads the content
+     * @return what the reader read, null if there is no file, it is of another version or it can't
+     *     be read
+     */
+    @Nullable
+    public <T> T read(Reader<T> reader) {
+        try (DataInputStream input = new DataInputStream(file.openRead())) {
+            if (input.readInt() != version) {
+                return null;
+            }
+            return reader.read(input);
+        } catch (FileNotFoundException e) {
+            return null;
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to read " + name, e);
+            return null;
+        }
+    }
+
+    /**
+     * replaces the content, on failure the previous content is kept
+     * @param writer writes the content
+     */
+    public void write(Writer writer) {
+        DataOutputStream output = null;
+        try {
+            output = new DataOutputStream(file.startWrite());
+            output.writeInt(version);
+            writer.write(output);
+            file.endWrite(output);
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to write " + name, e);
+            Util.closeQuietly(output);
+        }
+    }
+
+    public void delete() {
+        file.delete();
+    }
+}
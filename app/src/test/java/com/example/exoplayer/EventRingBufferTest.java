@@ -0,0 +1,104 @@
+package com.example.exoplayer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import org.junit.Test;
+
+/**
+ * Checks ordering, overflow and concurrent producers of the event ring buffer.
+ */
+public class EventRingBufferTest {
+
+    @Test
+    public void capacity_roundsUpToPowerOfTwo() {
+        assertEquals(8, new EventRingBuffer<Integer>(5).capacity());
+        assertEquals(8, new EventRingBuffer<Integer>(8).capacity());
+    }
+
+    @Test
+    public void drain_keepsOfferOrder() {
+        EventRingBuffer<Integer> buffer = new EventRingBuffer<>(8);
+        for (int i = 0; i < 5; i++) {
+            assertTrue(buffer.offer(i));
+        }
+        List<Integer> drained = new ArrayList<>();
+
+        assertEquals(3, buffer.drainTo(drained, 3));
+        assertEquals(2, buffer.drainTo(drained, 10));
+
+        assertEquals(Arrays.asList(0, 1, 2, 3, 4), drained);
+        assertEquals(0, buffer.size());
+    }
+
+    @Test
+    public void full_dropsAndCounts() {
+        EventRingBuffer<Integer> buffer = new EventRingBuffer<>(4);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(buffer.offer(i));
+        }
+
+        assertFalse(buffer.offer(4));
+        assertEquals(1, buffer.getDroppedCount());
+
+        //draining frees the slots again
+        buffer.drainTo(new ArrayList<>(), 2);
+        assertTrue(buffer.offer(5));
+    }
+
+    @Test
+    public void concurrentProducers_noEventLostOrDuplicated() throws InterruptedException {
+        int producers = 4;
+        int perProducer = 10_000;
+        EventRingBuffer<Integer> buffer = new EventRingBuffer<>(256);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            int base = p * perProducer;
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < perProducer; i++) {
+                    //spin instead of dropping so every value has to come through
+                    while (!buffer.offer(base + i)) {
+                        Thread.yield();
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+
+        start.countDown();
+        boolean[] seen = new boolean[producers * perProducer];
+        int[] lastPerProducer = new int[producers];
+        Arrays.fill(lastPerProducer, -1);
+        List<Integer> batch = new ArrayList<>();
+        int received = 0;
+        while (received < seen.length) {
+            batch.clear();
+            buffer.drainTo(batch, 64);
+            for (int value : batch) {
+                assertFalse(seen[value]);
+                seen[value] = true;
+                //each producer's own events stay in order
+                int producer = value / perProducer;
+                assertTrue(value > lastPerProducer[producer]);
+                lastPerProducer[producer] = value;
+                received++;
+            }
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(0, buffer.size());
+    }
+}
@@ -0,0 +1,134 @@
+package com.example.exoplayer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Loads a burst of parallel segments from a local stand-in server, once over HTTP/1.1 and once
+ * over multiplexed h2, and checks the connections each transport opens for it.
+ */
+public class HttpTransportBenchmarkTest {
+
+    //audio and video segments of a few seconds of playback plus a license request or two
+    private static final int PARALLEL_LOADS = 32;
+    private static final int SEGMENT_BYTES = 16 * 1024;
+    //time the stand-in takes to start answering, like an origin or CDN edge does
+    private static final long SERVER_DELAY_MS = 100;
+
+    private MockWebServer server;
+
+    @Before
+    public void setUp() {
+        server = new MockWebServer();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.shutdown();
+    }
+
+    @Test
+    public void http2_multiplexesLoadsOnOneConnection() throws Exception {
+        Result http2 = runBurst(HttpTransport.H2_PRIOR_KNOWLEDGE);
+
+        assertEquals(1, http2.connections);
+        assertEquals(1, http2.http2Connections);
+        assertEquals(PARALLEL_LOADS, http2.succeeded);
+    }
+
+    @Test
+    public void http1_opensConnectionPerParallelLoad() throws Exception {
+        Result http1 = runBurst(HttpTransport.HTTP_1_1);
+
+        assertEquals(HttpTransport.HTTP_1_1.getMaxRequestsPerHost(), http1.connections);
+        assertEquals(0, http1.http2Connections);
+        assertEquals(PARALLEL_LOADS, http1.succeeded);
+    }
+
+    private Result runBurst(HttpTransport transport) throws Exception {
+        server.setProtocols(
+                transport == HttpTransport.H2_PRIOR_KNOWLEDGE
+                        ? Collections.singletonList(Protocol.H2_PRIOR_KNOWLEDGE)
+                        : Collections.singletonList(Protocol.HTTP_1_1));
+        server.enqueue(new MockResponse().setBody("#EXTM3U"));
+        byte[] segment = new byte[SEGMENT_BYTES];
+        for (int i = 0; i < PARALLEL_LOADS; i++) {
+            server.enqueue(
+                    new MockResponse()
+                            .setBody(new okio.Buffer().write(segment))
+                            .setHeadersDelay(SERVER_DELAY_MS, TimeUnit.MILLISECONDS));
+        }
+        server.start();
+
+        ConnectionMetrics connectionMetrics = new ConnectionMetrics();
+        OkHttpClient client =
+                transport.apply(new OkHttpClient.Builder())
+                        .eventListenerFactory(connectionMetrics)
+                        .build();
+        //the manifest comes first, the segment burst follows on whatever connection it left
+        try (Response manifest =
+                client.newCall(new Request.Builder().url(server.url("/manifest.m3u8")).build()).execute()) {
+            assertTrue(manifest.isSuccessful());
+        }
+        CountDownLatch done = new CountDownLatch(PARALLEL_LOADS);
+        AtomicInteger succeeded = new AtomicInteger();
+        for (int i = 0; i < PARALLEL_LOADS; i++) {
+            Request request = new Request.Builder().url(server.url("/segment-" + i + ".m4s")).build();
+            client.newCall(request).enqueue(new Callback() {
+                @Override
+                public void onResponse(Call call, Response response) throws IOException {
+                    try {
+                        if (response.body().bytes().length == SEGMENT_BYTES) {
+                            succeeded.incrementAndGet();
+                        }
+                    } finally {
+                        response.close();
+                        done.countDown();
+                    }
+                }
+
+                @Override
+                public void onFailure(Call call, IOException e) {
+                    done.countDown();
+                }
+            });
+        }
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        client.dispatcher().executorService().shutdown();
+        client.connectionPool().evictAll();
+        return new Result(
+                connectionMetrics.getNewConnectionCount(),
+                connectionMetrics.getHttp2ConnectionCount(),
+                succeeded.get());
+    }
+
+    private static final class Result {
+
+        final int connections;
+        final int http2Connections;
+        final int succeeded;
+
+        Result(int connections, int http2Connections, int succeeded) {
+            this.connections = connections;
+            this.http2Connections = http2Connections;
+            this.succeeded = succeeded;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.example.exoplayer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Checks that a renewed key set id takes precedence over the one of the download request, also
+ * after the store is read back, until the download is removed.
+ */
+public class KeySetIdStoreTest {
+
+    private static final String DOWNLOAD_ID = "download";
+    private static final byte[] REQUEST_KEY_SET_ID = {1, 2, 3};
+    private static final byte[] RENEWED_KEY_SET_ID = {4, 5, 6, 7};
+
+    @Rule public final TemporaryFolder folder = new TemporaryFolder();
+
+    private File file;
+    private KeySetIdStore store;
+
+    @Before
+    public void setUp() {
+        file = new File(folder.getRoot(), "key_set_ids");
+        store = new KeySetIdStore(file);
+    }
+
+    @Test
+    public void notRenewed_usesRequestKeySetId() {
+        assertArrayEquals(REQUEST_KEY_SET_ID, store.get(DOWNLOAD_ID, REQUEST_KEY_SET_ID));
+        assertNull(store.get(DOWNLOAD_ID, /* requestKeySetId= */ null));
+    }
+
+    @Test
+    public void renewed_overridesRequestKeySetId() {
+        store.put(DOWNLOAD_ID, RENEWED_KEY_SET_ID);
+
+        assertArrayEquals(RENEWED_KEY_SET_ID, store.get(DOWNLOAD_ID, REQUEST_KEY_SET_ID));
+        assertArrayEquals(REQUEST_KEY_SET_ID, store.get("other", REQUEST_KEY_SET_ID));
+        //what the next start reads back
+        assertArrayEquals(RENEWED_KEY_SET_ID, new KeySetIdStore(file).get(DOWNLOAD_ID, REQUEST_KEY_SET_ID));
+    }
+
+    @Test
+    public void renewedAgain_latestWins() {
+        byte[] secondRenewal = {8, 9};
+        store.put(DOWNLOAD_ID, RENEWED_KEY_SET_ID);
+        store.put(DOWNLOAD_ID, secondRenewal);
+
+        assertArrayEquals(secondRenewal, store.get(DOWNLOAD_ID, REQUEST_KEY_SET_ID));
+        assertArrayEquals(secondRenewal, new KeySetIdStore(file).get(DOWNLOAD_ID, REQUEST_KEY_SET_ID));
+    }
+
+    @Test
+    public void removed_fallsBackToRequestKeySetId() {
+        store.put(DOWNLOAD_ID, RENEWED_KEY_SET_ID);
+        store.put("other", RENEWED_KEY_SET_ID);
+
+        store.remove(DOWNLOAD_ID);
+
+        assertArrayEquals(REQUEST_KEY_SET_ID, store.get(DOWNLOAD_ID, REQUEST_KEY_SET_ID));
+        KeySetIdStore reread = new KeySetIdStore(file);
+        assertArrayEquals(REQUEST_KEY_SET_ID, reread.get(DOWNLOAD_ID, REQUEST_KEY_SET_ID));
+        assertArrayEquals(RENEWED_KEY_SET_ID, reread.get("other", REQUEST_KEY_SET_ID));
+    }
+
+    @Test
+    public void removed_notRenewed_keepsFile() {
+        store.remove(DOWNLOAD_ID);
+
+        assertArrayEquals(REQUEST_KEY_SET_ID, store.get(DOWNLOAD_ID, REQUEST_KEY_SET_ID));
+    }
+}
@@ -0,0 +1,222 @@
+package com.example.exoplayer;
+
+import static org.junit.Assert.assertEquals;
+
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.ExoPlayer;
+import com.google.android.exoplayer2.Player;
+import com.google.android.exoplayer2.source.MediaSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Moves through a lazy playlist forwards and backwards on a fake player and checks which items
+ * are in the player's playlist at each step.
+ */
+public class LazyPlaylistTest {
+
+    private static final int SIZE = 10;
+
+    private FakePlayer player;
+    private Map<MediaSource, Integer> createdItems;
+    private LazyPlaylist playlist;
+
+    @Before
+    public void setUp() {
+        player = new FakePlayer();
+        createdItems = new IdentityHashMap<>();
+        playlist = new LazyPlaylist(
+                player.asExoPlayer(), SIZE, this::createMediaSource, LazyPlaylist.DEFAULT_LOOKAHEAD);
+    }
+
+    @Test
+    public void seekTo_keepsPreviousAndNextItem() {
+        playlist.seekTo(4, /* positionMs= */ 30_000);
+
+        assertEquals(Arrays.asList(3, 4, 5), getWindow());
+        assertEquals(4, playlist.getCurrentIndex());
+        assertEquals(30_000, player.startPositionMs);
+    }
+
+    @Test
+    public void seekTo_edgesOfPlaylist() {
+        playlist.seekTo(0, C.TIME_UNSET);
+        assertEquals(Arrays.asList(0, 1), getWindow());
+        assertEquals(0, playlist.getCurrentIndex());
+
+        playlist.seekTo(SIZE - 1, C.TIME_UNSET);
+        assertEquals(Arrays.asList(8, 9), getWindow());
+        assertEquals(SIZE - 1, playlist.getCurrentIndex());
+        assertEquals(C.INDEX_UNSET, playlist.getNextIndex());
+    }
+
+    @Test
+    public void forward_slidesWindowAlong() {
+        playlist.seekTo(0, C.TIME_UNSET);
+
+        player.transitionToNext(Player.MEDIA_ITEM_TRANSITION_REASON_AUTO);
+        assertEquals(Arrays.asList(0, 1, 2), getWindow());
+        assertEquals(1, playlist.getCurrentIndex());
+
+        player.transitionToNext(Player.MEDIA_ITEM_TRANSITION_REASON_AUTO);
+        player.transitionToNext(Player.MEDIA_ITEM_TRANSITION_REASON_SEEK);
+        assertEquals(Arrays.asList(2, 3, 4), getWindow());
+        assertEquals(3, playlist.getCurrentIndex());
+        //every item was only created once, as it entered the window
+        assertEquals(5, createdItems.size());
+    }
+
+    @Test
+    public void backward_goesPastCurrentItem() {
+        playlist.seekTo(5, C.TIME_UNSET);
+
+        player.transitionToPrevious();
+        assertEquals(Arrays.asList(3, 4, 5), getWindow());
+        assertEquals(4, playlist.getCurrentIndex());
+
+        player.transitionToPrevious();
+        assertEquals(Arrays.asList(2, 3, 4), getWindow());
+        assertEquals(3, playlist.getCurrentIndex());
+    }
+
+    @Test
+    public void backward_stopsAtStartOfPlaylist() {
+        playlist.seekTo(2, C.TIME_UNSET);
+
+        player.transitionToPrevious();
+        player.transitionToPrevious();
+
+        assertEquals(Arrays.asList(0, 1), getWindow());
+        assertEquals(0, playlist.getCurrentIndex());
+        assertEquals(0, player.currentIndex);
+    }
+
+    @Test
+    public void backAndForward_returnsToSameWindow() {
+        playlist.seekTo(5, C.TIME_UNSET);
+
+        player.transitionToPrevious();
+        player.transitionToNext(Player.MEDIA_ITEM_TRANSITION_REASON_SEEK);
+
+        assertEquals(Arrays.asList(4, 5, 6), getWindow());
+        assertEquals(5, playlist.getCurrentIndex());
+    }
+
+    @Test
+    public void release_stopsFollowingTransitions() {
+        playlist.seekTo(5, C.TIME_UNSET);
+
+        playlist.release();
+
+        assertEquals(0, player.listeners.size());
+    }
+
+    private MediaSource createMediaSource(int index) {
+        MediaSource mediaSource = (MediaSource) Proxy.newProxyInstance(
+                MediaSource.class.getClassLoader(),
+                new Class<?>[] {MediaSource.class},
+                (proxy, method, args) -> {
+                    throw new UnsupportedOperationException(method.getName());
+                });
+        createdItems.put(mediaSource, index);
+        return mediaSource;
+    }
+
+    private List<Integer> getWindow() {
+        List<Integer> window = new ArrayList<>();
+        for (MediaSource mediaSource : player.mediaSources) {
+            window.add(createdItems.get(mediaSource));
+        }
+        return window;
+    }
+
+    /** Keeps the player's playlist and current item, transitions are reported like the player does. */
+    private static final class FakePlayer implements InvocationHandler {
+
+        final List<MediaSource> mediaSources = new ArrayList<>();
+        final List<Player.Listener> listeners = new ArrayList<>();
+        int currentIndex;
+        long startPositionMs;
+
+        ExoPlayer asExoPlayer() {
+            return (ExoPlayer) Proxy.newProxyInstance(
+                    ExoPlayer.class.getClassLoader(), new Class<?>[] {ExoPlayer.class}, this);
+        }
+
+        void transitionToNext(int reason) {
+            currentIndex++;
+            notifyTransition(reason);
+        }
+
+        /** what seekToPrevious does near the start of an item that has a previous one */
+        void transitionToPrevious() {
+            if (currentIndex > 0) {
+                currentIndex--;
+                notifyTransition(Player.MEDIA_ITEM_TRANSITION_REASON_SEEK);
+            }
+        }
+
+        private void notifyTransition(int reason) {
+            for (Player.Listener listener : new ArrayList<>(listeners)) {
+                listener.onMediaItemTransition(/* mediaItem= */ null, reason);
+            }
+        }
+
+        @Nullable
+        @Override
+        @SuppressWarnings("unchecked")
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            switch (method.getName()) {
+                case "addListener":
+                    listeners.add((Player.Listener) args[0]);
+                    return null;
+                case "removeListener":
+                    listeners.remove(args[0]);
+                    return null;
+                case "setMediaSources":
+                    mediaSources.clear();
+                    mediaSources.addAll((List<MediaSource>) args[0]);
+                    currentIndex = (int) args[1];
+                    startPositionMs = (long) args[2];
+                    return null;
+                case "addMediaSource":
+                    if (args.length == 1) {
+                        mediaSources.add((MediaSource) args[0]);
+                    } else {
+                        int index = (int) args[0];
+                        mediaSources.add(index, (MediaSource) args[1]);
+                        if (index <= currentIndex) {
+                            currentIndex++;
+                        }
+                    }
+                    return null;
+                case "removeMediaItems":
+                    int fromIndex = (int) args[0];
+                    int toIndex = (int) args[1];
+                    if (fromIndex <= currentIndex && currentIndex < toIndex) {
+                        throw new IllegalStateException("removed the current item");
+                    }
+                    mediaSources.subList(fromIndex, toIndex).clear();
+                    if (toIndex <= currentIndex) {
+                        currentIndex -= toIndex - fromIndex;
+                    }
+                    return null;
+                case "getCurrentMediaItemIndex":
+                    return currentIndex;
+                case "getMediaItemCount":
+                    return mediaSources.size();
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        }
+    }
+}
@@ -0,0 +1,288 @@
+package com.example.exoplayer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.os.Handler;
+import android.os.Looper;
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.PlaybackParameters;
+import com.google.android.exoplayer2.Player;
+import com.google.android.exoplayer2.util.Clock;
+import com.google.android.exoplayer2.util.HandlerWrapper;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Drives the live latency monitor with a fake clock and a scripted live player, and checks the
+ * offsets it samples against the low latency config.
+ */
+public class LowLatencyLiveTest {
+
+    private static final long SAMPLE_INTERVAL_MS = 1_000;
+
+    private FakeClock clock;
+    private FakePlayer player;
+    private LiveLatencyMonitor monitor;
+
+    @Before
+    public void setUp() {
+        clock = new FakeClock();
+        player = new FakePlayer();
+        LowLatencyLiveConfig config =
+                new LowLatencyLiveConfig.Builder()
+                        .setTargetOffsetMs(3_000)
+                        .setOffsetRangeMs(1_500, 10_000)
+                        .build();
+        monitor = new LiveLatencyMonitor(player.asPlayer(), config, SAMPLE_INTERVAL_MS, clock);
+    }
+
+    @Test
+    public void monitor_samplesOffsetEveryInterval() {
+        player.liveOffsetMs = 3_200;
+        monitor.start();
+
+        clock.advanceTimeMs(SAMPLE_INTERVAL_MS - 1);
+        assertEquals(0, monitor.getSampleCount());
+        assertEquals(C.TIME_UNSET, monitor.getCurrentOffsetMs());
+
+        clock.advanceTimeMs(1);
+        player.liveOffsetMs = 2_800;
+        clock.advanceTimeMs(SAMPLE_INTERVAL_MS);
+        player.liveOffsetMs = 3_600;
+        clock.advanceTimeMs(SAMPLE_INTERVAL_MS);
+
+        assertEquals(3, monitor.getSampleCount());
+        assertEquals(3_600, monitor.getCurrentOffsetMs());
+        assertEquals(2_800, monitor.getMinOffsetMs());
+        assertEquals(3_600, monitor.getMaxOffsetMs());
+        assertEquals(3_200, monitor.getAverageOffsetMs());
+        assertEquals(0, monitor.getOutOfRangeCount());
+    }
+
+    @Test
+    public void monitor_countsOffsetsOutsideRange() {
+        List<Long> reported = new ArrayList<>();
+        monitor.setCallback(sampled -> reported.add(sampled.getCurrentOffsetMs()));
+        monitor.start();
+
+        for (long offsetMs : new long[] {1_000, 3_000, 12_000, 9_000}) {
+            player.liveOffsetMs = offsetMs;
+            clock.advanceTimeMs(SAMPLE_INTERVAL_MS);
+        }
+
+        assertEquals(Arrays.asList(1_000L, 3_000L, 12_000L, 9_000L), reported);
+        assertEquals(2, monitor.getOutOfRangeCount());
+    }
+
+    @Test
+    public void monitor_skipsPausedOrNotLiveOrUnknownOffset() {
+        monitor.start();
+
+        player.isPlaying = false;
+        clock.advanceTimeMs(SAMPLE_INTERVAL_MS);
+        player.isPlaying = true;
+        player.isLive = false;
+        clock.advanceTimeMs(SAMPLE_INTERVAL_MS);
+        player.isLive = true;
+        player.liveOffsetMs = C.TIME_UNSET;
+        clock.advanceTimeMs(SAMPLE_INTERVAL_MS);
+        assertEquals(0, monitor.getSampleCount());
+
+        //sampling carries on once the offset is known again
+        player.liveOffsetMs = 4_000;
+        clock.advanceTimeMs(SAMPLE_INTERVAL_MS);
+        assertEquals(1, monitor.getSampleCount());
+    }
+
+    @Test
+    public void isPlayingChanged_restartsInterval() {
+        player.liveOffsetMs = 3_000;
+        monitor.start();
+
+        clock.advanceTimeMs(SAMPLE_INTERVAL_MS / 2);
+        monitor.onIsPlayingChanged(/* isPlaying= */ true);
+        clock.advanceTimeMs(SAMPLE_INTERVAL_MS / 2);
+        assertEquals(0, monitor.getSampleCount());
+
+        clock.advanceTimeMs(SAMPLE_INTERVAL_MS / 2);
+        assertEquals(1, monitor.getSampleCount());
+        //the restart didn't leave a second sample chain behind
+        clock.advanceTimeMs(SAMPLE_INTERVAL_MS * 4);
+        assertEquals(5, monitor.getSampleCount());
+    }
+
+    @Test
+    public void stop_endsSamplingAndKeepsValues() {
+        player.liveOffsetMs = 3_000;
+        monitor.start();
+        clock.advanceTimeMs(SAMPLE_INTERVAL_MS * 2);
+
+        monitor.stop();
+        clock.advanceTimeMs(SAMPLE_INTERVAL_MS * 5);
+
+        assertEquals(2, monitor.getSampleCount());
+        assertEquals(0, player.listenerCount);
+        assertEquals(0, clock.getPendingCount());
+
+        monitor.reset();
+        assertEquals(0, monitor.getSampleCount());
+        assertEquals(C.TIME_UNSET, monitor.getAverageOffsetMs());
+    }
+
+    @Test
+    public void isInRange_checksConfiguredOffsets() {
+        LowLatencyLiveConfig config =
+                new LowLatencyLiveConfig.Builder()
+                        .setTargetOffsetMs(3_000)
+                        .setOffsetRangeMs(1_500, 10_000)
+                        .build();
+
+        assertTrue(config.isInRange(3_000));
+        assertTrue(config.isInRange(1_500));
+        assertFalse(config.isInRange(1_499));
+        assertFalse(config.isInRange(10_001));
+        assertFalse(config.isInRange(C.TIME_UNSET));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void build_targetOutsideRange_throws() {
+        new LowLatencyLiveConfig.Builder()
+                .setTargetOffsetMs(1_000)
+                .setOffsetRangeMs(1_500, 10_000)
+                .build();
+    }
+
+    /** A live player with a scripted offset, only what the monitor asks of it is answered. */
+    private static final class FakePlayer implements InvocationHandler {
+
+        boolean isPlaying = true;
+        boolean isLive = true;
+        long liveOffsetMs = C.TIME_UNSET;
+        int listenerCount;
+
+        Player asPlayer() {
+            return (Player) Proxy.newProxyInstance(
+                    Player.class.getClassLoader(), new Class<?>[] {Player.class}, this);
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            switch (method.getName()) {
+                case "getApplicationLooper":
+                    return null;
+                case "addListener":
+                    listenerCount++;
+                    return null;
+                case "removeListener":
+                    listenerCount--;
+                    return null;
+                case "isPlaying":
+                    return isPlaying;
+                case "isCurrentMediaItemLive":
+                    return isLive;
+                case "getCurrentLiveOffset":
+                    return liveOffsetMs;
+                case "getPlaybackParameters":
+                    return PlaybackParameters.DEFAULT;
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        }
+    }
+
+    /**
+     * Clock whose handlers run their delayed runnables only when the test advances the time, in
+     * the order they are due.
+     */
+    private static final class FakeClock implements Clock, InvocationHandler {
+
+        private final List<PendingRunnable> pending = new ArrayList<>();
+        private long timeMs;
+
+        void advanceTimeMs(long ms) {
+            long targetMs = timeMs + ms;
+            while (true) {
+                PendingRunnable next = null;
+                for (PendingRunnable runnable : pending) {
+                    if (runnable.dueMs <= targetMs && (next == null || runnable.dueMs < next.dueMs)) {
+                        next = runnable;
+                    }
+                }
+                if (next == null) {
+                    break;
+                }
+                pending.remove(next);
+                timeMs = next.dueMs;
+                next.runnable.run();
+            }
+            timeMs = targetMs;
+        }
+
+        int getPendingCount() {
+            return pending.size();
+        }
+
+        @Override
+        public long currentTimeMillis() {
+            return timeMs;
+        }
+
+        @Override
+        public long elapsedRealtime() {
+            return timeMs;
+        }
+
+        @Override
+        public long uptimeMillis() {
+            return timeMs;
+        }
+
+        @Override
+        public HandlerWrapper createHandler(Looper looper, @Nullable Handler.Callback callback) {
+            return (HandlerWrapper) Proxy.newProxyInstance(
+                    HandlerWrapper.class.getClassLoader(), new Class<?>[] {HandlerWrapper.class}, this);
+        }
+
+        @Override
+        public void onThreadBlocked() {}
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            switch (method.getName()) {
+                case "post":
+                    pending.add(new PendingRunnable((Runnable) args[0], timeMs));
+                    return true;
+                case "postDelayed":
+                    pending.add(new PendingRunnable((Runnable) args[0], timeMs + (long) args[1]));
+                    return true;
+                case "removeCallbacksAndMessages":
+                    if (args[0] == null) {
+                        pending.clear();
+                    }
+                    return null;
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        }
+    }
+
+    private static final class PendingRunnable {
+
+        final Runnable runnable;
+        final long dueMs;
+
+        PendingRunnable(Runnable runnable, long dueMs) {
+            this.runnable = runnable;
+            this.dueMs = dueMs;
+        }
+    }
+}
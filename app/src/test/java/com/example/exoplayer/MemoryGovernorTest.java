@@ -0,0 +1,189 @@
+package com.example.exoplayer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.content.ComponentCallbacks2;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.DefaultLoadControl;
+import com.google.android.exoplayer2.Renderer;
+import com.google.android.exoplayer2.source.TrackGroupArray;
+import com.google.android.exoplayer2.trackselection.ExoTrackSelection;
+import com.google.android.exoplayer2.upstream.Allocation;
+import com.google.android.exoplayer2.upstream.DefaultAllocator;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Simulates every trim memory level and checks the buffers the load control is left with.
+ */
+public class MemoryGovernorTest {
+
+    private static final int SEGMENT_SIZE = C.DEFAULT_BUFFER_SEGMENT_SIZE;
+    private static final int TARGET_BUFFER_BYTES = 100 * SEGMENT_SIZE;
+    private static final int MAX_BUFFER_MS = 50_000;
+    private static final int BACK_BUFFER_MS = 10_000;
+
+    private MemoryGovernor memoryGovernor;
+    private DefaultAllocator allocator;
+    private MemoryAwareLoadControl loadControl;
+
+    @Before
+    public void setUp() {
+        memoryGovernor = new MemoryGovernor();
+        allocator = new DefaultAllocator(/* trimOnReset= */ true, SEGMENT_SIZE);
+        loadControl =
+                new MemoryAwareLoadControl.Builder()
+                        .setAllocator(allocator)
+                        .setBufferDurationsMs(
+                                /* minBufferMs= */ MAX_BUFFER_MS,
+                                MAX_BUFFER_MS,
+                                /* bufferForPlaybackMs= */ 2_500,
+                                /* bufferForPlaybackAfterRebufferMs= */ 5_000)
+                        .setBackBufferMs(BACK_BUFFER_MS)
+                        .setTargetBufferBytes(TARGET_BUFFER_BYTES)
+                        .build();
+        loadControl.onTracksSelected(
+                new Renderer[0], TrackGroupArray.EMPTY, new ExoTrackSelection[0]);
+        memoryGovernor.register(loadControl);
+    }
+
+    @Test
+    public void noPressure_keepsFullBuffers() {
+        assertEquals(MemoryGovernor.STAGE_NORMAL, memoryGovernor.getStage());
+        assertFootprint(/* scale= */ 1f);
+    }
+
+    @Test
+    public void runningModerate_halvesBuffers() {
+        memoryGovernor.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE);
+
+        assertEquals(MemoryGovernor.STAGE_MODERATE, memoryGovernor.getStage());
+        assertFootprint(/* scale= */ 0.5f);
+    }
+
+    @Test
+    public void uiHidden_halvesBuffers() {
+        memoryGovernor.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN);
+
+        assertEquals(MemoryGovernor.STAGE_MODERATE, memoryGovernor.getStage());
+        assertFootprint(/* scale= */ 0.5f);
+    }
+
+    @Test
+    public void runningLow_quartersBuffers() {
+        memoryGovernor.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW);
+
+        assertEquals(MemoryGovernor.STAGE_LOW, memoryGovernor.getStage());
+        assertFootprint(/* scale= */ 0.25f);
+    }
+
+    @Test
+    public void background_quartersBuffers() {
+        memoryGovernor.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_BACKGROUND);
+
+        assertEquals(MemoryGovernor.STAGE_LOW, memoryGovernor.getStage());
+        assertFootprint(/* scale= */ 0.25f);
+    }
+
+    @Test
+    public void runningCritical_shrinksBuffersToMinimum() {
+        memoryGovernor.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL);
+
+        assertEquals(MemoryGovernor.STAGE_CRITICAL, memoryGovernor.getStage());
+        assertFootprint(/* scale= */ 0.1f);
+    }
+
+    @Test
+    public void moderateAndComplete_shrinkBuffersToMinimum() {
+        memoryGovernor.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_MODERATE);
+        assertEquals(MemoryGovernor.STAGE_CRITICAL, memoryGovernor.getStage());
+
+        memoryGovernor.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+        assertEquals(MemoryGovernor.STAGE_CRITICAL, memoryGovernor.getStage());
+        assertFootprint(/* scale= */ 0.1f);
+    }
+
+    @Test
+    public void lowMemory_shrinksBuffersToMinimum() {
+        memoryGovernor.onLowMemory();
+
+        assertEquals(MemoryGovernor.STAGE_CRITICAL, memoryGovernor.getStage());
+        assertFootprint(/* scale= */ 0.1f);
+    }
+
+    @Test
+    public void milderLevel_doesNotGrowBuffers() {
+        memoryGovernor.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL);
+        memoryGovernor.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE);
+
+        assertEquals(MemoryGovernor.STAGE_CRITICAL, memoryGovernor.getStage());
+        assertFootprint(/* scale= */ 0.1f);
+    }
+
+    @Test
+    public void recovery_growsBuffersBackOneStageAtATime() {
+        memoryGovernor.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL);
+
+        memoryGovernor.recoverOneStage();
+        assertFootprint(/* scale= */ 0.25f);
+        memoryGovernor.recoverOneStage();
+        assertFootprint(/* scale= */ 0.5f);
+        memoryGovernor.recoverOneStage();
+        assertEquals(MemoryGovernor.STAGE_NORMAL, memoryGovernor.getStage());
+        assertFootprint(/* scale= */ 1f);
+    }
+
+    @Test
+    public void shrinking_capsAllocatorBytes() {
+        memoryGovernor.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW);
+
+        //only the reduced target can be allocated before the load control stops loading
+        List<Allocation> allocations = new ArrayList<>();
+        while (loadControl.shouldContinueLoading(
+                /* playbackPositionUs= */ 0, /* bufferedDurationUs= */ C.msToUs(10_000), /* playbackSpeed= */ 1f)) {
+            allocations.add(allocator.allocate());
+        }
+        assertEquals(TARGET_BUFFER_BYTES / 4, allocator.getTotalBytesAllocated());
+    }
+
+    @Test
+    public void shrinking_keepsBackBuffer() {
+        memoryGovernor.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL);
+
+        //the player reads it once when it is built, a scaled value would never take effect
+        assertEquals(C.msToUs(BACK_BUFFER_MS), loadControl.getBackBufferDurationUs());
+    }
+
+    @Test
+    public void noTargetBytes_scalesTargetWorkedOutForTracks() {
+        MemoryAwareLoadControl defaultLoadControl = new MemoryAwareLoadControl.Builder().build();
+        defaultLoadControl.onTracksSelected(
+                new Renderer[0], TrackGroupArray.EMPTY, new ExoTrackSelection[0]);
+
+        assertEquals(0, defaultLoadControl.getBackBufferDurationUs());
+        assertEquals(DefaultLoadControl.DEFAULT_MIN_BUFFER_SIZE, defaultLoadControl.getTargetBufferBytes());
+        defaultLoadControl.onMemoryStageChanged(MemoryGovernor.STAGE_LOW, /* scale= */ 0.25f);
+        assertEquals(
+                DefaultLoadControl.DEFAULT_MIN_BUFFER_SIZE / 4, defaultLoadControl.getTargetBufferBytes());
+    }
+
+    @Test
+    public void shrinking_neverStopsLoadingBelowPlayableBuffer() {
+        memoryGovernor.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+
+        assertTrue(loadControl.shouldContinueLoading(
+                /* playbackPositionUs= */ 0, /* bufferedDurationUs= */ C.msToUs(1_000), /* playbackSpeed= */ 1f));
+    }
+
+    private void assertFootprint(float scale) {
+        long maxBufferUs = Math.max(C.msToUs(5_000), (long) (C.msToUs(MAX_BUFFER_MS) * scale));
+        assertEquals(maxBufferUs, loadControl.getMaxBufferUs());
+        assertEquals((int) (TARGET_BUFFER_BYTES * scale), loadControl.getTargetBufferBytes());
+        assertFalse(loadControl.shouldContinueLoading(
+                /* playbackPositionUs= */ 0, maxBufferUs, /* playbackSpeed= */ 1f));
+    }
+}
@@ -0,0 +1,25 @@
+package com.example.exoplayer;
+
+import static org.junit.Assert.assertEquals;
+
+import com.google.android.exoplayer2.C;
+import org.junit.Test;
+
+/**
+ * Checks how the license and playback durations a license states become the time left on it.
+ */
+public class OfflineLicenseManagerTest {
+
+    @Test
+    public void getRemainingSec_smallerOfBoth() {
+        assertEquals(60, OfflineLicenseManager.getRemainingSec(/* licenseSec= */ 3_600, /* playbackSec= */ 60));
+        assertEquals(0, OfflineLicenseManager.getRemainingSec(/* licenseSec= */ 0, /* playbackSec= */ 60));
+    }
+
+    @Test
+    public void getRemainingSec_unstatedDurationLeftOut() {
+        assertEquals(3_600, OfflineLicenseManager.getRemainingSec(3_600, C.TIME_UNSET));
+        assertEquals(60, OfflineLicenseManager.getRemainingSec(C.TIME_UNSET, 60));
+        assertEquals(C.TIME_UNSET, OfflineLicenseManager.getRemainingSec(C.TIME_UNSET, C.TIME_UNSET));
+    }
+}
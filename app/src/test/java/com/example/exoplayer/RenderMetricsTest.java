@@ -0,0 +1,160 @@
+package com.example.exoplayer;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Feeds the render metrics rendition changes, decoder counter snapshots and dropped frame reports
+ * and checks what each rendition is credited with and when renditions get capped.
+ */
+public class RenderMetricsTest {
+
+    private RenderMetrics renderMetrics;
+    private long realtimeMs;
+
+    @Before
+    public void setUp() {
+        renderMetrics = new RenderMetrics(/* maxVideoHeight= */ Integer.MAX_VALUE);
+        realtimeMs = 1_000;
+    }
+
+    @Test
+    public void counterSnapshots_creditRenditionThatRenderedThem() {
+        send(inputFormat("720p", 720));
+        send(frameCounts(/* rendered= */ 300, /* dropped= */ 2), offsetCounts(/* totalUs= */ 3_000_000, 300));
+        send(inputFormat("1080p", 1_080));
+        send(frameCounts(/* rendered= */ 500, /* dropped= */ 12), offsetCounts(/* totalUs= */ 3_400_000, 500));
+        send(inputFormat("720p", 720));
+        //the renderer is disabled and enabled again, its counters start over
+        send(frameCounts(/* rendered= */ 100, /* dropped= */ 0), offsetCounts(/* totalUs= */ 1_000_000, 100));
+        send(inputFormat("1080p", 1_080));
+        send(frameCounts(/* rendered= */ 0, /* dropped= */ 0), offsetCounts(/* totalUs= */ 0, 0));
+
+        List<RenderMetrics.RenditionStats> stats = renderMetrics.getRenditionStats();
+        assertEquals(2, stats.size());
+        RenderMetrics.RenditionStats sd = stats.get(0);
+        assertEquals("720p", sd.id);
+        assertEquals(400, sd.renderedFrames);
+        assertEquals(2, sd.droppedFrames);
+        assertEquals(10_000, sd.getAverageFrameOffsetUs());
+        RenderMetrics.RenditionStats hd = stats.get(1);
+        assertEquals("1080p", hd.id);
+        assertEquals(200, hd.renderedFrames);
+        assertEquals(10, hd.droppedFrames);
+        assertEquals(2_000, hd.getAverageFrameOffsetUs());
+    }
+
+    @Test
+    public void frameOffsetReports_notCredited() {
+        send(inputFormat("1080p", 1_080));
+        //only reported when the renderer stops, by then another rendition may be current
+        send(new PlaybackEvent(PlaybackEvent.TYPE_VIDEO_FRAME_OFFSET, realtimeMs, 0, 5_000_000, 500, null));
+
+        RenderMetrics.RenditionStats hd = renderMetrics.getRenditionStats().get(0);
+        assertEquals(0, hd.renderedFrames);
+        assertEquals(0, hd.frameOffsetCount);
+    }
+
+    @Test
+    public void repeatedEpisodes_capBelowHeight() {
+        send(inputFormat("1080p", 1_080));
+
+        send(droppedFrames(/* count= */ 50, /* elapsedMs= */ 5_000));
+        send(droppedFrames(/* count= */ 50, /* elapsedMs= */ 5_000));
+        assertEquals(Integer.MAX_VALUE, renderMetrics.getMaxVideoHeight());
+
+        send(droppedFrames(/* count= */ 50, /* elapsedMs= */ 5_000));
+        assertEquals(1_079, renderMetrics.getMaxVideoHeight());
+        assertEquals(3, renderMetrics.getRenditionStats().get(0).dropEpisodes);
+    }
+
+    @Test
+    public void episodesCountPerHeight_acrossRenditions() {
+        send(inputFormat("1080p-high", 1_080));
+        send(droppedFrames(/* count= */ 50, /* elapsedMs= */ 5_000));
+        send(inputFormat("720p", 720));
+        send(droppedFrames(/* count= */ 50, /* elapsedMs= */ 5_000));
+        send(inputFormat("1080p-low", 1_080));
+        send(droppedFrames(/* count= */ 50, /* elapsedMs= */ 5_000));
+        assertEquals(Integer.MAX_VALUE, renderMetrics.getMaxVideoHeight());
+
+        send(droppedFrames(/* count= */ 50, /* elapsedMs= */ 5_000));
+        assertEquals(1_079, renderMetrics.getMaxVideoHeight());
+    }
+
+    @Test
+    public void fewDroppedFrames_notAnEpisode() {
+        send(inputFormat("1080p", 1_080));
+        for (int i = 0; i < 10; i++) {
+            //what the player reports when it stops
+            send(droppedFrames(/* count= */ 9, /* elapsedMs= */ 100));
+        }
+
+        assertEquals(Integer.MAX_VALUE, renderMetrics.getMaxVideoHeight());
+        assertEquals(0, renderMetrics.getRenditionStats().get(0).dropEpisodes);
+    }
+
+    @Test
+    public void lowDropRate_notAnEpisode() {
+        send(inputFormat("1080p", 1_080));
+        for (int i = 0; i < 10; i++) {
+            //50 frames over a minute is under EPISODE_DROPPED_FPS
+            send(droppedFrames(/* count= */ 50, /* elapsedMs= */ 60_000));
+        }
+
+        assertEquals(Integer.MAX_VALUE, renderMetrics.getMaxVideoHeight());
+    }
+
+    @Test
+    public void minCapHeight_neverCapped() {
+        send(inputFormat("360p", 360));
+        for (int i = 0; i < 10; i++) {
+            send(droppedFrames(/* count= */ 50, /* elapsedMs= */ 5_000));
+        }
+
+        assertEquals(Integer.MAX_VALUE, renderMetrics.getMaxVideoHeight());
+        assertEquals(10, renderMetrics.getRenditionStats().get(0).dropEpisodes);
+    }
+
+    @Test
+    public void aboveExistingCap_notCappedAgain() {
+        renderMetrics = new RenderMetrics(/* maxVideoHeight= */ 719);
+        send(inputFormat("1080p", 1_080));
+        for (int i = 0; i < 10; i++) {
+            send(droppedFrames(/* count= */ 50, /* elapsedMs= */ 5_000));
+        }
+        assertEquals(719, renderMetrics.getMaxVideoHeight());
+
+        send(inputFormat("540p", 540));
+        for (int i = 0; i < 3; i++) {
+            send(droppedFrames(/* count= */ 50, /* elapsedMs= */ 5_000));
+        }
+        assertEquals(539, renderMetrics.getMaxVideoHeight());
+    }
+
+    private void send(PlaybackEvent... events) {
+        renderMetrics.onEvents(Arrays.asList(events));
+        realtimeMs += 1_000;
+    }
+
+    private PlaybackEvent inputFormat(String id, int height) {
+        return new PlaybackEvent(
+                PlaybackEvent.TYPE_VIDEO_INPUT_FORMAT, realtimeMs, 0, /* bitrate= */ height * 5_000, height, id);
+    }
+
+    private PlaybackEvent frameCounts(long rendered, long dropped) {
+        return new PlaybackEvent(PlaybackEvent.TYPE_VIDEO_FRAME_COUNTS, realtimeMs, 0, rendered, dropped, null);
+    }
+
+    private PlaybackEvent offsetCounts(long totalUs, long frames) {
+        return new PlaybackEvent(PlaybackEvent.TYPE_VIDEO_OFFSET_COUNTS, realtimeMs, 0, totalUs, frames, null);
+    }
+
+    private PlaybackEvent droppedFrames(long count, long elapsedMs) {
+        return new PlaybackEvent(PlaybackEvent.TYPE_DROPPED_FRAMES, realtimeMs, 0, count, elapsedMs, null);
+    }
+}
@@ -0,0 +1,119 @@
+package com.example.exoplayer;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.TimeUnit;
+import okhttp3.Call;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks that missed deadlines are told apart from loads the player cancels.
+ */
+public class RequestDeadlinesTest {
+
+    private MockWebServer server;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new MockWebServer();
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.shutdown();
+    }
+
+    @Test
+    public void isTimeout_firstByteDeadline() {
+        server.enqueue(new MockResponse().setHeadersDelay(1, TimeUnit.SECONDS));
+        OkHttpClient client =
+                new RequestDeadlines(
+                                /* connectTimeoutMs= */ 1_000,
+                                /* firstByteTimeoutMs= */ 100,
+                                /* totalTimeoutMs= */ 0)
+                        .apply(new OkHttpClient());
+
+        assertTrue(RequestDeadlines.isTimeout(execute(client.newCall(request()))));
+    }
+
+    @Test
+    public void isTimeout_totalDeadline() {
+        server.enqueue(new MockResponse().setHeadersDelay(1, TimeUnit.SECONDS));
+        OkHttpClient client =
+                new RequestDeadlines(
+                                /* connectTimeoutMs= */ 1_000,
+                                /* firstByteTimeoutMs= */ 5_000,
+                                /* totalTimeoutMs= */ 100)
+                        .apply(new OkHttpClient());
+
+        assertTrue(RequestDeadlines.isTimeout(execute(client.newCall(request()))));
+    }
+
+    @Test
+    public void isTimeout_wrappedByDataSource() {
+        IOException e = new IOException(new SocketTimeoutException("Read timed out"));
+
+        assertTrue(RequestDeadlines.isTimeout(e));
+    }
+
+    @Test
+    public void isTimeout_canceledCall_isNot() throws InterruptedException {
+        server.enqueue(new MockResponse().setHeadersDelay(1, TimeUnit.SECONDS));
+        Call call = RequestDeadlines.MEDIA.apply(new OkHttpClient()).newCall(request());
+        Thread canceler = new Thread(() -> {
+            sleep(100);
+            call.cancel();
+        });
+        canceler.start();
+
+        IOException e = execute(call);
+        canceler.join();
+
+        assertFalse(RequestDeadlines.isTimeout(e));
+    }
+
+    @Test
+    public void isTimeout_interruptedLoaderThread_isNot() {
+        //what a blocking read throws when the loader interrupts its thread on cancel
+        IOException e = new IOException(new InterruptedIOException());
+
+        assertFalse(RequestDeadlines.isTimeout(e));
+        assertFalse(RequestDeadlines.isTimeout(new InterruptedIOException("interrupted")));
+        assertFalse(RequestDeadlines.isTimeout(null));
+    }
+
+    private Request request() {
+        return new Request.Builder().url(server.url("/segment.m4s")).build();
+    }
+
+    private static IOException execute(Call call) {
+        try (Response response = call.execute()) {
+            response.body().bytes();
+        } catch (IOException e) {
+            return e;
+        }
+        fail("load finished before its deadline");
+        return null;
+    }
+
+    private static void sleep(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.example.exoplayer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.Format;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Writes and reads back the resume state and checks that files of another version are ignored.
+ */
+public class ResumeStateStoreTest {
+
+    @Rule public final TemporaryFolder folder = new TemporaryFolder();
+
+    private File file;
+    private ResumeStateStore store;
+
+    @Before
+    public void setUp() {
+        file = new File(folder.getRoot(), "resume_state");
+        store = new ResumeStateStore(file);
+    }
+
+    @Test
+    public void write_readsBackEveryField() {
+        ResumeStateStore.State state = new ResumeStateStore.State();
+        state.manifestUri = "https://example.com/manifest.mpd";
+        state.itemIndex = 2;
+        state.positionMs = 95_000;
+        state.autoPlay = false;
+        state.bitrateEstimate = 4_500_000;
+        state.videoBitrate = 3_000_000;
+        state.maxVideoWidth = 1_280;
+        state.maxVideoHeight = 719;
+        state.maxVideoBitrate = 5_000_000;
+        state.preferredAudioLanguage = "de";
+        state.preferredTextLanguage = null;
+
+        store.write(state);
+        //what the next cold start reads
+        ResumeStateStore.State read = new ResumeStateStore(file).read();
+
+        assertNotNull(read);
+        assertEquals("https://example.com/manifest.mpd", read.manifestUri);
+        assertEquals(2, read.itemIndex);
+        assertEquals(95_000, read.positionMs);
+        assertFalse(read.autoPlay);
+        assertEquals(4_500_000, read.bitrateEstimate);
+        assertEquals(3_000_000, read.videoBitrate);
+        assertEquals(1_280, read.maxVideoWidth);
+        assertEquals(719, read.maxVideoHeight);
+        assertEquals(5_000_000, read.maxVideoBitrate);
+        assertEquals("de", read.preferredAudioLanguage);
+        assertNull(read.preferredTextLanguage);
+    }
+
+    @Test
+    public void write_readsBackUnsetValues() {
+        store.write(new ResumeStateStore.State());
+
+        ResumeStateStore.State read = store.read();
+
+        assertNotNull(read);
+        assertNull(read.manifestUri);
+        assertEquals(C.INDEX_UNSET, read.itemIndex);
+        assertEquals(C.TIME_UNSET, read.positionMs);
+        assertEquals(Format.NO_VALUE, read.videoBitrate);
+        assertEquals(Integer.MAX_VALUE, read.maxVideoHeight);
+    }
+
+    @Test
+    public void read_otherVersion_isIgnored() {
+        //a file from the layout that still had the rendition size in it
+        new VersionedFile(file, /* version= */ 1).write(output -> {
+            output.writeBoolean(false);
+            output.writeInt(0);
+            output.writeLong(60_000);
+        });
+
+        assertNull(store.read());
+    }
+
+    @Test
+    public void read_truncatedFile_isIgnored() throws IOException {
+        store.write(new ResumeStateStore.State());
+        //the version is intact, the state after it is cut short
+        try (RandomAccessFile truncated = new RandomAccessFile(file, "rw")) {
+            truncated.setLength(6);
+        }
+
+        assertNull(store.read());
+    }
+
+    @Test
+    public void read_nothingStoredOrCleared_isNull() {
+        assertNull(store.read());
+
+        store.write(new ResumeStateStore.State());
+        store.clear();
+
+        assertNull(store.read());
+    }
+}
@@ -0,0 +1,130 @@
+package com.example.exoplayer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.Renderer;
+import com.google.android.exoplayer2.source.TrackGroupArray;
+import com.google.android.exoplayer2.trackselection.ExoTrackSelection;
+import com.google.android.exoplayer2.upstream.DefaultAllocator;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Two players' load controls on one allocator, checks they stay under the shared cap together and
+ * that scaling one of them only takes away its own share.
+ */
+public class SharedBufferBudgetTest {
+
+    private static final int SEGMENT_SIZE = C.DEFAULT_BUFFER_SEGMENT_SIZE;
+    private static final int GLOBAL_BUFFER_BYTES = 100 * SEGMENT_SIZE;
+    //buffered enough to start playing, so only the byte cap holds loading back
+    private static final long BUFFERED_US = C.msToUs(10_000);
+
+    private DefaultAllocator allocator;
+    private SharedBufferBudget budget;
+    private MemoryAwareLoadControl first;
+    private MemoryAwareLoadControl second;
+
+    @Before
+    public void setUp() {
+        allocator = new DefaultAllocator(/* trimOnReset= */ false, SEGMENT_SIZE);
+        budget = new SharedBufferBudget(allocator);
+        first = createLoadControl();
+        second = createLoadControl();
+    }
+
+    @Test
+    public void twoPlayers_shareOneCap() {
+        selectTracks(first);
+        selectTracks(second);
+        assertEquals(GLOBAL_BUFFER_BYTES, budget.getTargetBufferBytes());
+
+        //the first player takes 60 segments, the second may only fill up the rest
+        allocate(first, 60);
+        int secondSegments = allocateWhileLoading(second);
+
+        assertEquals(40, secondSegments);
+        assertEquals(GLOBAL_BUFFER_BYTES, allocator.getTotalBytesAllocated());
+        assertFalse(shouldContinueLoading(first));
+    }
+
+    @Test
+    public void scalingOnePlayer_takesOnlyItsShare() {
+        selectTracks(first);
+        selectTracks(second);
+
+        first.onMemoryStageChanged(MemoryGovernor.STAGE_MODERATE, /* scale= */ 0.5f);
+
+        assertEquals(GLOBAL_BUFFER_BYTES * 3 / 4, budget.getTargetBufferBytes());
+        second.onMemoryStageChanged(MemoryGovernor.STAGE_MODERATE, /* scale= */ 0.5f);
+        assertEquals(GLOBAL_BUFFER_BYTES / 2, budget.getTargetBufferBytes());
+    }
+
+    @Test
+    public void tracksSelectedAgain_doesNotOverwriteSharedTarget() {
+        selectTracks(first);
+        selectTracks(second);
+        second.onMemoryStageChanged(MemoryGovernor.STAGE_LOW, /* scale= */ 0.25f);
+        int target = budget.getTargetBufferBytes();
+
+        selectTracks(first);
+
+        assertEquals(target, budget.getTargetBufferBytes());
+    }
+
+    @Test
+    public void stoppedPlayer_leavesWholeCapToOthers() {
+        selectTracks(first);
+        selectTracks(second);
+        second.onMemoryStageChanged(MemoryGovernor.STAGE_CRITICAL, /* scale= */ 0.1f);
+
+        second.onStopped();
+        assertEquals(1, budget.getLoadControlCount());
+        assertEquals(GLOBAL_BUFFER_BYTES, budget.getTargetBufferBytes());
+
+        first.onReleased();
+        assertEquals(0, budget.getLoadControlCount());
+        assertEquals(0, budget.getTargetBufferBytes());
+    }
+
+    private MemoryAwareLoadControl createLoadControl() {
+        return new MemoryAwareLoadControl.Builder()
+                .setAllocator(allocator)
+                .setAllocatorBudget(budget)
+                .setBufferDurationsMs(
+                        /* minBufferMs= */ 50_000,
+                        /* maxBufferMs= */ 50_000,
+                        /* bufferForPlaybackMs= */ 2_500,
+                        /* bufferForPlaybackAfterRebufferMs= */ 5_000)
+                .setTargetBufferBytes(GLOBAL_BUFFER_BYTES)
+                .build();
+    }
+
+    private static void selectTracks(MemoryAwareLoadControl loadControl) {
+        loadControl.onTracksSelected(new Renderer[0], TrackGroupArray.EMPTY, new ExoTrackSelection[0]);
+    }
+
+    private void allocate(MemoryAwareLoadControl loadControl, int segments) {
+        for (int i = 0; i < segments; i++) {
+            assertTrue(shouldContinueLoading(loadControl));
+            allocator.allocate();
+        }
+    }
+
+    private int allocateWhileLoading(MemoryAwareLoadControl loadControl) {
+        int segments = 0;
+        while (shouldContinueLoading(loadControl)) {
+            allocator.allocate();
+            segments++;
+        }
+        return segments;
+    }
+
+    private static boolean shouldContinueLoading(MemoryAwareLoadControl loadControl) {
+        return loadControl.shouldContinueLoading(
+                /* playbackPositionUs= */ 0, BUFFERED_US, /* playbackSpeed= */ 1f);
+    }
+}
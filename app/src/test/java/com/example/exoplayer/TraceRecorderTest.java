@@ -0,0 +1,176 @@
+package com.example.exoplayer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.Player;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Checks the bounded ring and string table of the trace recorder and the Chrome trace JSON it
+ * exports.
+ */
+public class TraceRecorderTest {
+
+    @Rule public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void ring_keepsMostRecentEvents() throws IOException {
+        TraceRecorder recorder = new TraceRecorder(/* exportDirectory= */ null, /* maxEvents= */ 4);
+        List<PlaybackEvent> events = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            events.add(load(/* realtimeMs= */ 1_000 + i, "segment-" + i + ".m4s"));
+        }
+
+        recorder.onEvents(events);
+
+        assertEquals(4, recorder.getEventCount());
+        assertEquals(6, recorder.getOverwrittenCount());
+        String json = export(recorder);
+        assertTrue(json.contains("\"overwrittenEvents\":6"));
+        assertFalse(json.contains("segment-5.m4s"));
+        for (int i = 6; i < 10; i++) {
+            assertTrue(json.contains("\"uri\":\"segment-" + i + ".m4s\""));
+        }
+    }
+
+    @Test
+    public void strings_evictedOldestFirst() throws IOException {
+        TraceRecorder recorder = new TraceRecorder(/* exportDirectory= */ null, /* maxEvents= */ 1_024);
+        List<PlaybackEvent> events = new ArrayList<>();
+        //more distinct uris than the string table holds
+        for (int i = 0; i < 600; i++) {
+            events.add(load(/* realtimeMs= */ i, "segment-" + i + ".m4s"));
+        }
+
+        recorder.onEvents(events);
+
+        String json = export(recorder);
+        assertEquals(600, recorder.getEventCount());
+        assertFalse(json.contains("\"segment-0.m4s\""));
+        assertFalse(json.contains("\"segment-87.m4s\""));
+        assertTrue(json.contains("\"segment-88.m4s\""));
+        assertTrue(json.contains("\"segment-599.m4s\""));
+        //the evicted ones are still there, only without their uri
+        assertEquals(600, count(json, "\"ph\":\"b\""));
+        assertEquals(88, count(json, "\"uri\":null"));
+    }
+
+    @Test
+    public void strings_inUseAreNotEvicted() throws IOException {
+        TraceRecorder recorder = new TraceRecorder(/* exportDirectory= */ null, /* maxEvents= */ 2_048);
+        List<PlaybackEvent> events = new ArrayList<>();
+        for (int i = 0; i < 1_000; i++) {
+            events.add(load(/* realtimeMs= */ 2 * i, "segment-" + i + ".m4s"));
+            //like the manifest that is refreshed between segments
+            events.add(load(/* realtimeMs= */ 2 * i + 1, "manifest.mpd"));
+        }
+
+        recorder.onEvents(events);
+
+        String json = export(recorder);
+        assertTrue(json.contains("\"segment-999.m4s\""));
+        assertFalse(json.contains("\"segment-0.m4s\""));
+        //re-interned as it is used, so its latest use still resolves after 1000 other uris
+        assertTrue(json.startsWith("\"uri\":\"manifest.mpd\"", json.lastIndexOf("\"uri\":")));
+    }
+
+    @Test
+    public void export_writesStatesLoadsAndCounters() throws IOException {
+        TraceRecorder recorder = new TraceRecorder(/* exportDirectory= */ null);
+        recorder.onEvents(Arrays.asList(
+                new PlaybackEvent(PlaybackEvent.TYPE_STATE, 1_000, 0, Player.STATE_BUFFERING, 0, null),
+                new PlaybackEvent(PlaybackEvent.TYPE_LOAD, 1_250, 0, 4_096, 200, "seg \"1\".m4s"),
+                new PlaybackEvent(PlaybackEvent.TYPE_BANDWIDTH, 1_300, C.TIME_UNSET, 2_000_000, 0, null),
+                new PlaybackEvent(PlaybackEvent.TYPE_STATE, 1_500, 0, Player.STATE_READY, 0, null),
+                new PlaybackEvent(PlaybackEvent.TYPE_DROPPED_FRAMES, 1_800, 300, 3, 1_000, null),
+                new PlaybackEvent(PlaybackEvent.TYPE_DROPPED_FRAMES, 2_000, 500, 2, 1_000, null)));
+
+        String json = export(recorder);
+
+        assertTrue(json.startsWith("{\"displayTimeUnit\":\"ms\",\"otherData\":{\"overwrittenEvents\":0}"));
+        assertTrue(json.endsWith("\n]}\n"));
+        //timestamps are in us relative to the first event
+        assertTrue(json.contains(
+                "{\"name\":\"BUFFERING\",\"ph\":\"X\",\"pid\":1,\"tid\":1,\"ts\":0,\"dur\":500000}"));
+        assertTrue(json.contains(
+                "{\"name\":\"READY\",\"ph\":\"X\",\"pid\":1,\"tid\":1,\"ts\":500000,\"dur\":500000}"));
+        //the load span reaches back by its duration, quotes in the uri are escaped
+        assertTrue(json.contains("{\"name\":\"load\",\"ph\":\"b\",\"pid\":1,\"tid\":2,\"ts\":50000,"
+                + "\"cat\":\"load\",\"id\":1,\"args\":{\"bytes\":4096,\"uri\":\"seg \\\"1\\\".m4s\"}}"));
+        assertTrue(json.contains("\"ph\":\"e\",\"pid\":1,\"tid\":2,\"ts\":250000"));
+        assertTrue(json.contains(
+                "{\"name\":\"bandwidth\",\"ph\":\"C\",\"pid\":1,\"tid\":1,\"ts\":300000,\"args\":{\"bps\":2000000}}"));
+        //dropped frames are a running total
+        assertTrue(json.contains("\"ts\":1000000,\"args\":{\"total\":5}}"));
+    }
+
+    @Test
+    public void release_exportsEventsDeliveredWhileReleasing() throws IOException {
+        File exportDirectory = new File(folder.getRoot(), "traces");
+        TraceRecorder recorder = new TraceRecorder(exportDirectory);
+        recorder.onEvents(Arrays.asList(
+                new PlaybackEvent(PlaybackEvent.TYPE_STATE, 1_000, 0, Player.STATE_READY, 0, null),
+                new PlaybackEvent(PlaybackEvent.TYPE_IS_PLAYING, 1_000, 0, 1, 0, null)));
+        //what the player delivers from release(), the pipeline drains it before onReleased
+        recorder.onEvents(Arrays.asList(
+                new PlaybackEvent(PlaybackEvent.TYPE_DROPPED_FRAMES, 9_000, 8_000, 4, 2_000, null),
+                new PlaybackEvent(PlaybackEvent.TYPE_VIDEO_FRAME_COUNTS, 9_000, 8_000, 480, 4, null),
+                new PlaybackEvent(PlaybackEvent.TYPE_PLAYER_RELEASED, 9_500, 8_000, 0, 0, null)));
+
+        recorder.onReleased();
+
+        File[] traces = exportDirectory.listFiles();
+        assertEquals(1, traces.length);
+        String json = new String(Files.readAllBytes(traces[0].toPath()), StandardCharsets.UTF_8);
+        assertTrue(json.contains("\"args\":{\"total\":4}"));
+        assertTrue(json.contains("{\"name\":\"videoFrameCounts\",\"ph\":\"i\",\"pid\":1,\"tid\":1,"
+                + "\"ts\":8000000,\"s\":\"t\",\"args\":{\"value1\":480,\"value2\":4,\"positionMs\":8000}}"));
+        assertTrue(json.contains("\"name\":\"playerReleased\""));
+        //the state the session ended in runs up to the release
+        assertTrue(json.contains(
+                "{\"name\":\"READY\",\"ph\":\"X\",\"pid\":1,\"tid\":1,\"ts\":0,\"dur\":8500000}"));
+    }
+
+    @Test
+    public void export_empty() throws IOException {
+        TraceRecorder recorder = new TraceRecorder(/* exportDirectory= */ null);
+
+        String json = export(recorder);
+
+        assertEquals(0, recorder.getEventCount());
+        assertTrue(json.contains("\"thread_name\""));
+        assertFalse(json.contains("\"ph\":\"X\""));
+    }
+
+    private static PlaybackEvent load(long realtimeMs, String uri) {
+        return new PlaybackEvent(
+                PlaybackEvent.TYPE_LOAD, realtimeMs, /* positionMs= */ 0, 1_024, /* durationMs= */ 0, uri);
+    }
+
+    private static String export(TraceRecorder recorder) throws IOException {
+        StringWriter writer = new StringWriter();
+        recorder.exportChromeTrace(writer);
+        return writer.toString();
+    }
+
+    private static int count(String text, String part) {
+        int count = 0;
+        for (int index = text.indexOf(part); index != -1; index = text.indexOf(part, index + 1)) {
+            count++;
+        }
+        return count;
+    }
+}